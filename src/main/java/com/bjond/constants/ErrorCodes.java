@@ -14,6 +14,7 @@
 
 package com.bjond.constants;
 
+import com.bjond.utilities.EnumLookup;
 
 /** <p> Maintains Error Codes in the system </p>
 
@@ -44,7 +45,17 @@ public class ErrorCodes {
         VALIDATION_ERROR,
         CONSTRAINT_VIOLATION,
         PERSON_RELATIONSHIP_TYPE_IN_USE,
-        BJOND_SERVER_COMMUNICATION_FAILURE        
+        BJOND_SERVER_COMMUNICATION_FAILURE;
+
+        /**
+         * Case insensitive, constant time parse of an error code.
+         *
+         * @param code the error code name, any case. May be null.
+         * @return the error code or null if there is none by that name.
+         */
+        public static BJOND_HTTP_ERROR_CODES parse(final String code) {
+            return EnumLookup.of(BJOND_HTTP_ERROR_CODES.class).get(code);
+        }
 	}
 
 
@@ -1,18 +1,44 @@
 package com.bjond.json;
 
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.stream.Stream;
+
+import javax.ws.rs.core.StreamingOutput;
+
 import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.BeanDescription;
+import com.fasterxml.jackson.databind.Module;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.PropertyName;
+import com.fasterxml.jackson.databind.SerializationConfig;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.module.SimpleModule;
 import com.fasterxml.jackson.databind.ser.BeanPropertyWriter;
+import com.fasterxml.jackson.databind.ser.BeanSerializerBuilder;
+import com.fasterxml.jackson.databind.ser.BeanSerializerModifier;
 import com.fasterxml.jackson.databind.ser.PropertyWriter;
 import com.fasterxml.jackson.databind.ser.impl.SimpleBeanPropertyFilter;
 import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
 
-import fj.Ord;
-import fj.data.Set;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+
+import lombok.EqualsAndHashCode;
+import lombok.RequiredArgsConstructor;
 import lombok.val;
 
 public class BjondPropertyFilter extends SimpleBeanPropertyFilter {
@@ -24,8 +50,9 @@ public class BjondPropertyFilter extends SimpleBeanPropertyFilter {
 	
 	public final static String NAME = "Bjond";
 	
-	Set<String> flags;
 	FilterAction action = FilterAction.INCLUDE;
+	final String[] requestedFlags;
+	private volatile FilterMask mask;
 
 	/**
 	 * This allocates a pass-thru filter
@@ -33,12 +60,12 @@ public class BjondPropertyFilter extends SimpleBeanPropertyFilter {
 	public BjondPropertyFilter() {
 		// "Exclude nothing" --> "pass through"
 		action = FilterAction.EXCLUDE;
-		flags = Set.empty(Ord.stringOrd);
+		requestedFlags = new String[0];
 	}
 	
 	public BjondPropertyFilter(FilterAction a, String ... filterFlags) {
 		action = a;
-		flags = Set.set(Ord.stringOrd, filterFlags);
+		requestedFlags = (filterFlags == null) ? new String[0] : filterFlags.clone();
 	}
 	
 	@Override
@@ -64,14 +91,8 @@ public class BjondPropertyFilter extends SimpleBeanPropertyFilter {
 			return;
 		}
 
-		val bp = writer.getAnnotation(BjondFilter.class);
-		if (bp != null) {
-			val annoFlags = Set.set(Ord.stringOrd, bp.flags());
-			val intersection = annoFlags.intersect(flags);
-
-			if (! intersection.isEmpty()) {
-				return;
-			}
+		if (matches(writer)) {
+			return;
 		}
 		writer.serializeAsField(pojo, jgen, provider);
 	}
@@ -84,15 +105,42 @@ public class BjondPropertyFilter extends SimpleBeanPropertyFilter {
 			return;
 		}
 
-		val bp = writer.getAnnotation(BjondFilter.class);
-		if (bp != null) {
-			val annoFlags = Set.set(Ord.stringOrd, bp.flags());
-			val intersection = annoFlags.intersect(flags);
+		if (matches(writer)) {
+			writer.serializeAsField(pojo, jgen, provider);
+		}
+	}
+
+	/**
+	 * True if the property's @BjondFilter flags and this filter's flags intersect; false for a
+	 * property without the annotation. The writers of a mapper with module() registered, toJSON's
+	 * among them, carry their property's mask, so a check is an AND per 64 annotated flags, one
+	 * in practice. Other writers have theirs worked out on every call.
+	 */
+	boolean matches(PropertyWriter writer) {
+		// The property's mask first: it may intern flags the filter's mask must then take in.
+		final long[] propertyMask = (writer instanceof MaskedPropertyWriter)
+			? ((MaskedPropertyWriter)writer).mask
+			: propertyMask(writer);
+		return intersects(mask(), propertyMask);
+	}
+
+	// This filter's flags as a mask of the annotated flags interned so far; redone once more are.
+	private long[] mask() {
+		final int annotated = annotatedFlagCount; // Read first: every flag below it is in flagIndexes.
+		FilterMask m = mask;
+		if (m == null || m.annotatedFlags != annotated) {
+			m = mask = new FilterMask(requestedMask(requestedFlags), annotated);
+		}
+		return m.bits;
+	}
 
-			if (! intersection.isEmpty()) {
-				writer.serializeAsField(pojo, jgen, provider);
+	private static boolean intersects(final long[] a, final long[] b) {
+		for (int i = Math.min(a.length, b.length) - 1; i >= 0; i--) {
+			if ((a[i] & b[i]) != 0) {
+				return true;
 			}
 		}
+		return false;
 	}
 
 	@Override
@@ -110,12 +158,272 @@ public class BjondPropertyFilter extends SimpleBeanPropertyFilter {
 	}
 	
 	public static String toJSON(Object o, boolean pretty, FilterAction action, String ... flags) throws JsonProcessingException {
-		val filters = new SimpleFilterProvider().addFilter(NAME, new BjondPropertyFilter(action, flags));
-		ObjectMapper mapper = new ObjectMapper();
-		ObjectWriter w = mapper.writer(filters).with(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS);
-		if (pretty) {
-			w = mapper.writer(filters).withDefaultPrettyPrinter();
-		} 
-		return w.writeValueAsString(o);
+		return writer(pretty, action, flags).writeValueAsString(o);
+	}
+
+	/**
+	 * Streaming toJSON: the UTF-8 JSON is written straight to out, which is flushed but left open.
+	 */
+	public static void toJSON(Object o, OutputStream out, FilterAction action, String ... flags) throws IOException {
+		toJSON(o, out, false, action, flags);
+	}
+
+	public static void toJSON(Object o, OutputStream out, boolean pretty, FilterAction action, String ... flags) throws IOException {
+		writer(pretty, action, flags).writeValue(out, o);
+	}
+
+	/**
+	 * Streaming toJSON of a result set: the items are written one by one as a JSON array, and out
+	 * is flushed every DEFAULT_FLUSH_BYTES or so. However many items there are, only about that much
+	 * is held in memory, and the client gets its first bytes straight away. out is left open.
+	 *
+	 * Should the iterator fail half way the array written so far is left unterminated.
+	 *
+	 * @return the number of items written.
+	 */
+	public static long toJSONArray(Iterator<?> items, OutputStream out, FilterAction action, String ... flags) throws IOException {
+		return writeArray(items, out, writer(false, action, flags), DEFAULT_FLUSH_BYTES);
+	}
+
+	/**
+	 * toJSONArray of a Stream, which is consumed and then closed, releasing a database cursor, say.
+	 */
+	public static long toJSONArray(Stream<?> items, OutputStream out, FilterAction action, String ... flags) throws IOException {
+		try (Stream<?> s = items) {
+			return toJSONArray(s.iterator(), out, action, flags);
+		}
+	}
+
+	/**
+	 * A JAX-RS entity streaming the items with toJSONArray when the response is written. The
+	 * Stream is closed then, so a resource method can return a lazily fetched result set as is:
+	 *
+	 *     return Response.ok(BjondPropertyFilter.streamingOutput(rows, FilterAction.INCLUDE, "summary"),
+	 *                        MediaType.APPLICATION_JSON).build();
+	 */
+	public static StreamingOutput streamingOutput(Stream<?> items, FilterAction action, String ... flags) {
+		return out -> toJSONArray(items, out, action, flags);
+	}
+
+	/**
+	 * Writes the items as a JSON array with any writer, a compiledWriter for one, flushing out
+	 * every flushBytes or so. out is left open if the writer leaves it open, as all of ours do.
+	 *
+	 * @return the number of items written.
+	 */
+	public static long writeArray(Iterator<?> items, OutputStream out, ObjectWriter writer, int flushBytes) throws IOException {
+		val counting = new CountingOutputStream(out);
+		long count = 0;
+		long flushedAt = 0;
+		// Flushed here, by the chunk, rather than by the writer after every item.
+		val array = writer.without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE).writeValuesAsArray(counting);
+		while (items.hasNext()) {
+			array.write(items.next());
+			count++;
+			if (counting.count - flushedAt >= flushBytes) {
+				array.flush();
+				flushedAt = counting.count;
+			}
+		}
+		// Not closed on failure: a truncated array must not pass for a whole one.
+		array.close();
+		return count;
+	}
+
+	public static final int DEFAULT_FLUSH_BYTES = 64 * 1024;
+
+	// Counts what the generator hands over; it buffers a few KB itself.
+	private static final class CountingOutputStream extends FilterOutputStream {
+		long count;
+
+		CountingOutputStream(final OutputStream out) {
+			super(out);
+		}
+
+		@Override
+		public void write(final int b) throws IOException {
+			out.write(b);
+			count++;
+		}
+
+		@Override
+		public void write(final byte[] b, final int off, final int len) throws IOException {
+			out.write(b, off, len);
+			count += len;
+		}
+	}
+
+	/**
+	 * The writer toJSON serializes with for this action and flag set. Writers are immutable and
+	 * cached, at most WRITER_CACHE_SIZE of them, least recently used evicted first. They all share
+	 * one ObjectMapper so Jackson's serializers are built once, not once per call.
+	 *
+	 * The writers leave streams open. Flag order and duplicates don't matter.
+	 */
+	public static ObjectWriter writer(boolean pretty, FilterAction action, String ... flags) {
+		return writers.getUnchecked(new WriterKey(action, normalize(flags), pretty, false));
+	}
+
+	/**
+	 * Like writer(), but with the filter compiled into the bean serializers by a
+	 * BjondSerializerModifier: no per field decision is left, at the cost of an ObjectMapper, and
+	 * its serializers, per action and flag set. For the few views that are serialized a lot.
+	 */
+	public static ObjectWriter compiledWriter(boolean pretty, FilterAction action, String ... flags) {
+		return writers.getUnchecked(new WriterKey(action, normalize(flags), pretty, true));
+	}
+
+	/**
+	 * A module that has the properties of @JsonFilter(NAME) beans carry their @BjondFilter mask,
+	 * worked out once when the bean serializer is built rather than on every field. toJSON's
+	 * mapper has it; register it with any other ObjectMapper serializing through this filter.
+	 */
+	public static Module module() {
+		return new SimpleModule("BjondPropertyFilter").setSerializerModifier(new BeanSerializerModifier() {
+				@Override
+				public BeanSerializerBuilder updateBuilder(SerializationConfig config, BeanDescription beanDesc, BeanSerializerBuilder builder) {
+					if (NAME.equals(builder.getFilterId())) {
+						val masked = new ArrayList<BeanPropertyWriter>(builder.getProperties().size());
+						for (val writer : builder.getProperties()) {
+							masked.add(new MaskedPropertyWriter(writer));
+						}
+						builder.setProperties(masked);
+					}
+					return builder;
+				}
+			});
+	}
+
+	static final int WRITER_CACHE_SIZE = 256;
+
+	// Configured as a new ObjectMapper() always was but for the masks; the filter comes with each writer.
+	private final static ObjectMapper mapper = new ObjectMapper().registerModule(module());
+
+	private final static LoadingCache<WriterKey, ObjectWriter> writers = CacheBuilder.newBuilder()
+		.maximumSize(WRITER_CACHE_SIZE)
+		.build(new CacheLoader<WriterKey, ObjectWriter>() {
+				@Override
+				public ObjectWriter load(final WriterKey key) {
+					val flags = key.flags.toArray(new String[key.flags.size()]);
+					final ObjectWriter base;
+					if (key.compiled) {
+						base = new ObjectMapper().registerModule(BjondSerializerModifier.module(key.action, flags)).writer();
+					} else {
+						base = mapper.writer(new SimpleFilterProvider().addFilter(NAME, new BjondPropertyFilter(key.action, flags)));
+					}
+					// Pretty output has never had its map entries sorted.
+					val w = key.pretty
+						? base.withDefaultPrettyPrinter()
+						: base.with(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS);
+					return w.without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+				}
+			});
+
+	private static List<String> normalize(final String ... flags) {
+		if (flags == null || flags.length == 0) {
+			return Collections.emptyList();
+		}
+		if (flags.length == 1) {
+			return Collections.singletonList(flags[0]);
+		}
+		return new ArrayList<>(new TreeSet<>(Arrays.asList(flags)));
+	}
+
+	/////////////////////////////////////////////////////////////////////////
+	//                     Flags interned as bit indexes                    //
+	/////////////////////////////////////////////////////////////////////////
+
+	private final static long[] NO_FLAGS = new long[0];
+
+	// The flags of the @BjondFilter annotations met so far, numbered in order of appearance.
+	// Flags only asked for are never added: they match nothing, and come from requests.
+	private final static ConcurrentMap<String, Integer> flagIndexes = new ConcurrentHashMap<>();
+	private static volatile int annotatedFlagCount;
+
+	private static long[] propertyMask(final PropertyWriter writer) {
+		val bp = writer.getAnnotation(BjondFilter.class);
+		return (bp == null) ? NO_FLAGS : annotatedMask(bp.flags());
+	}
+
+	// Mask of an annotation's flags, interning the new ones.
+	private static long[] annotatedMask(final String ... flags) {
+		long[] mask = NO_FLAGS;
+		for (val flag : flags) {
+			final Integer index = flagIndexes.get(flag);
+			mask = withBit(mask, (index != null) ? index : intern(flag));
+		}
+		return mask;
+	}
+
+	// Mask of a filter's flags; those no annotation declared so far are left out.
+	private static long[] requestedMask(final String ... flags) {
+		long[] mask = NO_FLAGS;
+		for (val flag : flags) {
+			final Integer index = flagIndexes.get(flag);
+			if (index != null) {
+				mask = withBit(mask, index);
+			}
+		}
+		return mask;
+	}
+
+	private static synchronized int intern(final String flag) {
+		Integer index = flagIndexes.get(flag);
+		if (index == null) {
+			index = flagIndexes.size();
+			flagIndexes.put(flag, index);
+			annotatedFlagCount = index + 1;
+		}
+		return index;
+	}
+
+	private static long[] withBit(long[] mask, final int index) {
+		final int word = index >>> 6;
+		if (word >= mask.length) {
+			mask = Arrays.copyOf(mask, word + 1);
+		}
+		mask[word] |= 1L << index;
+		return mask;
+	}
+
+	// A bean property with its mask, which renamed copies keep.
+	private static final class MaskedPropertyWriter extends BeanPropertyWriter {
+		private static final long serialVersionUID = 1L;
+
+		final long[] mask;
+
+		MaskedPropertyWriter(final BeanPropertyWriter base) {
+			super(base);
+			mask = propertyMask(base);
+		}
+
+		private MaskedPropertyWriter(final MaskedPropertyWriter base, final PropertyName name) {
+			super(base, name);
+			mask = base.mask;
+		}
+
+		@Override
+		protected BeanPropertyWriter _new(final PropertyName name) {
+			return new MaskedPropertyWriter(this, name);
+		}
+	}
+
+	private static final class FilterMask {
+		final long[] bits;
+		final int annotatedFlags;
+
+		FilterMask(final long[] bits, final int annotatedFlags) {
+			this.bits = bits;
+			this.annotatedFlags = annotatedFlags;
+		}
+	}
+
+	@RequiredArgsConstructor
+	@EqualsAndHashCode
+	private static final class WriterKey {
+		final FilterAction action;
+		final List<String> flags;
+		final boolean pretty;
+		final boolean compiled;
 	}
 }
@@ -0,0 +1,92 @@
+package com.bjond.json;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.bjond.json.BjondPropertyFilter.FilterAction;
+import com.fasterxml.jackson.databind.BeanDescription;
+import com.fasterxml.jackson.databind.Module;
+import com.fasterxml.jackson.databind.SerializationConfig;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.ser.BeanPropertyWriter;
+import com.fasterxml.jackson.databind.ser.BeanSerializerBuilder;
+import com.fasterxml.jackson.databind.ser.BeanSerializerModifier;
+
+import lombok.val;
+
+/**
+ * BjondPropertyFilter compiled into the bean serializers.
+ *
+ * Where BjondPropertyFilter decides on every field of every bean, this modifier decides once per
+ * class: the serializer of a @JsonFilter(BjondPropertyFilter.NAME) bean is built holding only the
+ * properties the action and flags allow, and without its filter id, so serializing it is plain
+ * unfiltered Jackson. The output is the same as BjondPropertyFilter's.
+ *
+ * Jackson caches serializers per ObjectMapper, so each action and flag set needs a mapper of its
+ * own with module(action, flags) registered. BjondPropertyFilter.compiledWriter keeps those.
+ */
+public class BjondSerializerModifier extends BeanSerializerModifier {
+
+	final FilterAction action;
+	final Set<String> flags;
+
+	public BjondSerializerModifier(FilterAction action, String ... flags) {
+		this.action = action;
+		this.flags = (flags == null) ? Collections.<String>emptySet() : new HashSet<>(Arrays.asList(flags));
+	}
+
+	/**
+	 * A module registering a BjondSerializerModifier, for ObjectMapper.registerModule.
+	 */
+	public static Module module(FilterAction action, String ... flags) {
+		return new SimpleModule("BjondSerializerModifier").setSerializerModifier(new BjondSerializerModifier(action, flags));
+	}
+
+	@Override
+	public BeanSerializerBuilder updateBuilder(SerializationConfig config, BeanDescription beanDesc, BeanSerializerBuilder builder) {
+		if (!BjondPropertyFilter.NAME.equals(builder.getFilterId())) {
+			return builder;
+		}
+
+		// Filtered properties, per view, run parallel to the properties.
+		final List<BeanPropertyWriter> properties = builder.getProperties();
+		final BeanPropertyWriter[] filtered = builder.getFilteredProperties();
+		final List<BeanPropertyWriter> kept = new ArrayList<>(properties.size());
+		final List<BeanPropertyWriter> keptFiltered = new ArrayList<>(properties.size());
+		for (int i = 0; i < properties.size(); i++) {
+			if (allows(properties.get(i).getAnnotation(BjondFilter.class))) {
+				kept.add(properties.get(i));
+				if (filtered != null) {
+					keptFiltered.add(filtered[i]);
+				}
+			}
+		}
+		builder.setProperties(kept);
+		if (filtered != null) {
+			builder.setFilteredProperties(keptFiltered.toArray(new BeanPropertyWriter[keptFiltered.size()]));
+		}
+
+		// The filter is handed an @JsonAnyGetter's entries as properties annotated as the getter is.
+		if (builder.getAnyGetter() != null && !allows(beanDesc.findAnyGetter().getAnnotation(BjondFilter.class))) {
+			builder.setAnyGetter(null);
+		}
+
+		builder.setFilterId(null);
+		return builder;
+	}
+
+	// Decided once per property and class, no need for BjondPropertyFilter's masks.
+	boolean allows(BjondFilter bp) {
+		boolean matches = false;
+		if (bp != null) {
+			for (val flag : bp.flags()) {
+				matches |= flags.contains(flag);
+			}
+		}
+		return (action == FilterAction.INCLUDE) == matches;
+	}
+}
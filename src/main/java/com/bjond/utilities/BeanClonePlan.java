@@ -0,0 +1,359 @@
+/*  Copyright (c) 2016
+ *  by Bjönd, Inc., Boston, MA
+ *
+ *  This software is furnished under a license and may be used only in
+ *  accordance with the terms of such license.  This software may not be
+ *  provided or otherwise made available to any other party.  No title to
+ *  nor ownership of the software is hereby transferred.
+ *
+ *  This software is the intellectual property of Bjönd, Inc.,
+ *  and is protected by the copyright laws of the United States of America.
+ *  All rights reserved internationally.
+ *
+ */
+
+package com.bjond.utilities;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.net.URI;
+import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Currency;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+import com.google.common.collect.ImmutableBiMap;
+import com.google.common.collect.ImmutableCollection;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.ImmutableSortedSet;
+
+import lombok.extern.slf4j.Slf4j;
+
+
+/** <p> Precompiled field by field deep copy of plain beans. </p>
+ *
+ *  A plain bean has a no argument constructor, no final instance fields and no
+ *  superclass from the JDK but Object. For such a class the plan is built once:
+ *  its constructor and every non static, non transient field, inherited ones
+ *  included, as MethodHandles. Copying a bean is then a constructor call and a
+ *  get and set per field, every value copied in turn:
+ *
+ *    immutable values (strings, boxed primitives, enums, BigDecimal, java.time...) are shared,
+ *    arrays, dates, the JDK collections and maps and Guava's immutable ones are copied as their own class,
+ *    plain beans are copied by their own plans,
+ *    anything else is cloned through Jackson, as JSONUtils.clone does.
+ *
+ *  A collection or map of no class it can make again, an unmodifiable view say,
+ *  is copied as an ArrayList, LinkedHashSet or LinkedHashMap. Should that not fit
+ *  the field it is set to, the value is cloned through Jackson instead, as the
+ *  field's type.
+ *
+ *  The copies of a graph are tracked by identity, so shared references stay
+ *  shared and cycles are reproduced rather than followed forever.
+ *
+ *  Plans are cached in a ClassValue so an entry lives exactly as long as its class.
+ *
+ * <a href="mailto:Stephen.Agneta@bjondinc.com">Steve 'Crash' Agneta</a>
+ *
+ */
+
+@Slf4j
+final class BeanClonePlan {
+    private final static MethodType CONSTRUCTOR_TYPE = MethodType.methodType(Object.class);
+    private final static MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+    private final static MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
+    private final static Set<Class<?>> IMMUTABLE = ImmutableSet.<Class<?>>of(
+        String.class, Boolean.class, Character.class, Byte.class, Short.class, Integer.class, Long.class,
+        Float.class, Double.class, BigDecimal.class, BigInteger.class, UUID.class, Class.class, Locale.class,
+        Currency.class, URI.class, URL.class, Pattern.class);
+
+    // Marks classes that are not plain beans.
+    private final static BeanClonePlan NONE = new BeanClonePlan(null, new MethodHandle[0], new MethodHandle[0], new Class<?>[0]);
+
+    private final static ClassValue<BeanClonePlan> cache = new ClassValue<BeanClonePlan>() {
+        @Override
+        protected BeanClonePlan computeValue(final Class<?> type) {
+            return build(type);
+        }
+    };
+
+    // Public constructor of a java.util class taking a Comparator if it is sorted, none otherwise.
+    private final static ClassValue<Optional<Constructor<?>>> jdkConstructors = new ClassValue<Optional<Constructor<?>>>() {
+        @Override
+        protected Optional<Constructor<?>> computeValue(final Class<?> type) {
+            if (!type.getName().startsWith("java.util.") || !Modifier.isPublic(type.getModifiers())
+                || Modifier.isAbstract(type.getModifiers())) {
+                return Optional.empty();
+            }
+            try {
+                if (SortedSet.class.isAssignableFrom(type) || SortedMap.class.isAssignableFrom(type)) {
+                    return Optional.of(type.getConstructor(Comparator.class));
+                }
+                type.getMethod("comparator"); // PriorityQueue and the like: no telling how to make one.
+                return Optional.empty();
+            } catch(final NoSuchMethodException e) {
+                try {
+                    return Optional.of(type.getConstructor());
+                } catch(final NoSuchMethodException none) {
+                    return Optional.empty();
+                }
+            }
+        }
+    };
+
+    private final MethodHandle constructor;
+    private final MethodHandle[] getters;
+    private final MethodHandle[] setters;
+    private final Class<?>[] types; // Declared type of each field; null if primitive.
+
+    private BeanClonePlan(final MethodHandle constructor, final MethodHandle[] getters, final MethodHandle[] setters, final Class<?>[] types) {
+        this.constructor = constructor;
+        this.getters = getters;
+        this.setters = setters;
+        this.types = types;
+    }
+
+    /**
+     * @param <T> Type of the object.
+     * @param o the object to copy. May be null.
+     * @return a deep copy of o.
+     * @throws IOException if a value that is no plain bean fails to go through Jackson.
+     */
+    @SuppressWarnings("unchecked")
+    static <T> T deepCopy(final T o) throws IOException {
+        try {
+            return (T)copy(o, new IdentityHashMap<>());
+        } catch(final IOException | RuntimeException | Error e) {
+            throw e;
+        } catch(final Throwable t) {
+            throw new UndeclaredThrowableException(t);
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Object copy(final Object o, final IdentityHashMap<Object, Object> copies) throws Throwable {
+        if (o == null) return null;
+
+        final Class<?> type = o.getClass();
+        if (IMMUTABLE.contains(type) || o instanceof Enum || isJavaTime(type)) return o;
+
+        final Object done = copies.get(o);
+        if (done != null) return done;
+
+        if (type.isArray()) return copyArray(o, copies);
+        if (o instanceof Date) return remember(o, ((Date)o).clone(), copies);
+
+        if (o instanceof ImmutableCollection || o instanceof ImmutableMap) {
+            final Object copy = copyImmutable(o, copies);
+            if (copy != null) return remember(o, copy, copies);
+        } else if (o instanceof Collection) {
+            final Collection<Object> copy = newCollection((Collection<Object>)o);
+            if (copy != null) {
+                remember(o, copy, copies);
+                for(final Object e : (Collection<Object>)o) { copy.add(copy(e, copies)); }
+                return copy;
+            }
+        } else if (o instanceof Map) {
+            final Map<Object, Object> copy = newMap((Map<Object, Object>)o);
+            remember(o, copy, copies);
+            for(final Map.Entry<Object, Object> e : ((Map<Object, Object>)o).entrySet()) {
+                copy.put(copy(e.getKey(), copies), copy(e.getValue(), copies));
+            }
+            return copy;
+        }
+
+        final BeanClonePlan plan = cache.get(type);
+        if (plan == NONE) {
+            return remember(o, JSONUtils.clone(o, (Class)type), copies);
+        }
+
+        final Object copy = plan.constructor.invokeExact();
+        remember(o, copy, copies);
+        for(int i = 0; i < plan.getters.length; i++) {
+            final Object value = (Object)plan.getters[i].invokeExact(o);
+            Object copied = copy(value, copies);
+            final Class<?> fieldType = plan.types[i];
+            if (copied != null && fieldType != null && !fieldType.isInstance(copied)) {
+                // A collection or map copied as some other class: Jackson makes one of the field's type.
+                copied = JSONUtils.clone(value, fieldType);
+            }
+            plan.setters[i].invokeExact(copy, copied);
+        }
+        return copy;
+    }
+
+    // Guava's immutable collections and maps of the same kind, or null for another kind.
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Object copyImmutable(final Object o, final IdentityHashMap<Object, Object> copies) throws Throwable {
+        if (o instanceof ImmutableMap) {
+            final Map<Object, Object> entries = new LinkedHashMap<>();
+            for(final Map.Entry<Object, Object> e : ((Map<Object, Object>)o).entrySet()) {
+                entries.put(copy(e.getKey(), copies), copy(e.getValue(), copies));
+            }
+            if (o instanceof ImmutableSortedMap) return ImmutableSortedMap.copyOf(entries, ((ImmutableSortedMap)o).comparator());
+            if (o instanceof ImmutableBiMap) return ImmutableBiMap.copyOf(entries);
+            return ImmutableMap.copyOf(entries);
+        }
+
+        final List<Object> elements = new ArrayList<>();
+        for(final Object e : (Collection<Object>)o) { elements.add(copy(e, copies)); }
+        if (o instanceof ImmutableList) return ImmutableList.copyOf(elements);
+        if (o instanceof ImmutableSortedSet) return ImmutableSortedSet.copyOf(((ImmutableSortedSet)o).comparator(), elements);
+        if (o instanceof ImmutableSet) return ImmutableSet.copyOf(elements);
+        return null;
+    }
+
+    private static Object remember(final Object original, final Object copy, final IdentityHashMap<Object, Object> copies) {
+        copies.put(original, copy);
+        return copy;
+    }
+
+    private static Object copyArray(final Object o, final IdentityHashMap<Object, Object> copies) throws Throwable {
+        if (o instanceof Object[]) {
+            final Object[] source = (Object[])o;
+            final Object[] copy = Arrays.copyOf(source, source.length); // Same component type.
+            remember(o, copy, copies);
+            for(int i = 0; i < copy.length; i++) { copy[i] = copy(source[i], copies); }
+            return copy;
+        }
+
+        final Object copy;
+        if (o instanceof byte[]) { copy = ((byte[])o).clone(); }
+        else if (o instanceof int[]) { copy = ((int[])o).clone(); }
+        else if (o instanceof long[]) { copy = ((long[])o).clone(); }
+        else if (o instanceof double[]) { copy = ((double[])o).clone(); }
+        else if (o instanceof char[]) { copy = ((char[])o).clone(); }
+        else if (o instanceof boolean[]) { copy = ((boolean[])o).clone(); }
+        else if (o instanceof float[]) { copy = ((float[])o).clone(); }
+        else { copy = ((short[])o).clone(); }
+        return remember(o, copy, copies);
+    }
+
+    // An empty collection of the same class where possible, else of the same kind, or null if
+    // there is no telling what that would be.
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Collection<Object> newCollection(final Collection<Object> c) {
+        final Class<?> type = c.getClass();
+        if (type == ArrayList.class) return new ArrayList<>(c.size());
+        if (type == HashSet.class) return new HashSet<>(Math.max(16, (int)(c.size() / .75f) + 1));
+        if (type == LinkedHashSet.class) return new LinkedHashSet<>(Math.max(16, (int)(c.size() / .75f) + 1));
+        if (type == LinkedList.class) return new LinkedList<>();
+        if (type == ArrayDeque.class) return new ArrayDeque<>(c.size());
+        if (c instanceof EnumSet) return EnumSet.copyOf((EnumSet)c); // Filled already; adding again is harmless.
+        final Collection<Object> same = (Collection<Object>)newJdkInstance(type, (c instanceof SortedSet) ? ((SortedSet<Object>)c).comparator() : null);
+        if (same != null) return same;
+        // Unmodifiable views, Arrays.asList, ORM collections: the plain kind. Checked against the field.
+        if (c instanceof SortedSet) return new TreeSet<>(((SortedSet<Object>)c).comparator());
+        if (c instanceof List) return new ArrayList<>(c.size());
+        if (c instanceof Set) return new LinkedHashSet<>(Math.max(16, (int)(c.size() / .75f) + 1));
+        return null;
+    }
+
+    // An empty map of the same class where possible, else of the same kind; an EnumMap comes
+    // filled, its values are replaced.
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Map<Object, Object> newMap(final Map<Object, Object> m) {
+        final Class<?> type = m.getClass();
+        if (type == HashMap.class) return new HashMap<>(Math.max(16, (int)(m.size() / .75f) + 1));
+        if (type == LinkedHashMap.class) return new LinkedHashMap<>(Math.max(16, (int)(m.size() / .75f) + 1));
+        if (m instanceof EnumMap) return new EnumMap((EnumMap)m);
+        final Map<Object, Object> same = (Map<Object, Object>)newJdkInstance(type, (m instanceof SortedMap) ? ((SortedMap<Object, Object>)m).comparator() : null);
+        if (same != null) return same;
+        // Unmodifiable views, ORM maps and the like: the plain kind. Checked against the field.
+        if (m instanceof SortedMap) return new TreeMap<>(((SortedMap<Object, Object>)m).comparator());
+        return new LinkedHashMap<>(Math.max(16, (int)(m.size() / .75f) + 1));
+    }
+
+    private static Object newJdkInstance(final Class<?> type, final Comparator<?> comparator) {
+        final Optional<Constructor<?>> constructor = jdkConstructors.get(type);
+        if (!constructor.isPresent()) return null;
+        try {
+            final Constructor<?> c = constructor.get();
+            return (c.getParameterCount() == 0) ? c.newInstance() : c.newInstance(comparator);
+        } catch(final ReflectiveOperationException | RuntimeException e) {
+            log.debug("Unable to make a {}: {}", type.getName(), e.toString());
+            return null;
+        }
+    }
+
+    private static boolean isJavaTime(final Class<?> type) {
+        // Every class of java.time proper is an immutable value.
+        return type.getName().startsWith("java.time.") && type.getName().lastIndexOf('.') == "java.time".length();
+    }
+
+    private static BeanClonePlan build(final Class<?> type) {
+        if (type.isInterface() || type.isArray() || type.isPrimitive() || type.isEnum()
+            || Modifier.isAbstract(type.getModifiers())) {
+            return NONE;
+        }
+
+        final MethodHandles.Lookup lookup = MethodHandles.lookup();
+        final List<MethodHandle> getters = new ArrayList<>();
+        final List<MethodHandle> setters = new ArrayList<>();
+        final List<Class<?>> types = new ArrayList<>();
+        try {
+            final Constructor<?> constructor = type.getDeclaredConstructor();
+            constructor.setAccessible(true);
+            final MethodHandle newInstance = lookup.unreflectConstructor(constructor).asType(CONSTRUCTOR_TYPE);
+
+            for(Class<?> c = type; c != Object.class; c = c.getSuperclass()) {
+                if (c.getName().startsWith("java.") || c.getName().startsWith("javax.")) return NONE;
+
+                for(final Field field : c.getDeclaredFields()) {
+                    final int modifiers = field.getModifiers();
+                    if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers)) continue;
+                    if (Modifier.isFinal(modifiers)) return NONE;
+
+                    field.setAccessible(true);
+                    getters.add(lookup.unreflectGetter(field).asType(GETTER_TYPE));
+                    setters.add(lookup.unreflectSetter(field).asType(SETTER_TYPE));
+                    types.add(field.getType().isPrimitive() ? null : field.getType());
+                }
+            }
+            return new BeanClonePlan(newInstance,
+                                     getters.toArray(new MethodHandle[getters.size()]),
+                                     setters.toArray(new MethodHandle[setters.size()]),
+                                     types.toArray(new Class<?>[types.size()]));
+        } catch(final NoSuchMethodException e) {
+            return NONE;
+        } catch(final IllegalAccessException | RuntimeException e) {
+            log.debug("{} is not copied field by field: {}", type.getName(), e.toString());
+            return NONE;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+/*  Copyright (c) 2016
+ *  by Bjönd, Inc., Boston, MA
+ *
+ *  This software is furnished under a license and may be used only in
+ *  accordance with the terms of such license.  This software may not be
+ *  provided or otherwise made available to any other party.  No title to
+ *  nor ownership of the software is hereby transferred.
+ *
+ *  This software is the intellectual property of Bjönd, Inc.,
+ *  and is protected by the copyright laws of the United States of America.
+ *  All rights reserved internationally.
+ *
+ */
+
+package com.bjond.utilities;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.beanutils.BeanUtils;
+
+import com.google.common.primitives.Primitives;
+
+import lombok.RequiredArgsConstructor;
+
+
+/** <p> Precompiled plan for copying the non null properties of one bean class onto another. </p>
+ *
+ *  Built once per (source class, target class) pair: every readable source property
+ *  with a writable target property of the same name becomes a transfer. Where the
+ *  declared types line up the transfer is a direct getter to setter hand off and
+ *  BeanUtils never gets involved. Only where they don't, say a String onto an int,
+ *  does the value go through BeanUtils for conversion, and then only if the runtime
+ *  value doesn't fit anyway.
+ *
+ *  Plans are cached in a ClassValue of the source class, per target class, so a plan
+ *  lives exactly as long as its source class and no Class is held by a static cache.
+ *  A steady stream of new source classes, generated proxies for instance, goes with
+ *  its classes rather than growing the cache without limit. A target class is held
+ *  as long as a source class it was copied from; the two are of the same class
+ *  loader in practice.
+ *
+ * <a href="mailto:Stephen.Agneta@bjondinc.com">Steve 'Crash' Agneta</a>
+ *
+ */
+
+final class BeanCopyPlan {
+    private final static ClassValue<ConcurrentMap<Class<?>, BeanCopyPlan>> plans = new ClassValue<ConcurrentMap<Class<?>, BeanCopyPlan>>() {
+        @Override
+        protected ConcurrentMap<Class<?>, BeanCopyPlan> computeValue(final Class<?> source) {
+            return new ConcurrentHashMap<>();
+        }
+    };
+
+    private final Transfer[] transfers;
+
+    private BeanCopyPlan(final Class<?> source, final Class<?> target) {
+        final BeanProperties targetProperties = BeanProperties.of(target);
+        final List<Transfer> list = new ArrayList<>();
+        for(final BeanProperties.Property from : BeanProperties.of(source).readable) {
+            final BeanProperties.Property to = targetProperties.get(from.name);
+            if (to == null || !to.isWritable()) { continue; }
+
+            final boolean direct = Primitives.wrap(to.type).isAssignableFrom(Primitives.wrap(from.type));
+            list.add(new Transfer(from, to, direct));
+        }
+        transfers = list.toArray(new Transfer[list.size()]);
+    }
+
+    /**
+     * @param source class of the bean copied from.
+     * @param target class of the bean copied onto.
+     * @return the cached plan.
+     */
+    static BeanCopyPlan of(final Class<?> source, final Class<?> target) {
+        final ConcurrentMap<Class<?>, BeanCopyPlan> byTarget = plans.get(source);
+        final BeanCopyPlan plan = byTarget.get(target);
+        return (plan != null) ? plan : byTarget.computeIfAbsent(target, t -> new BeanCopyPlan(source, t));
+    }
+
+    /**
+     * Copies every non null property of source onto target.
+     *
+     * @param source copied from; its class must be the one the plan was built for.
+     * @param target copied onto; its class must be the one the plan was built for.
+     * @throws Exception if a getter, setter or conversion fails.
+     */
+    void copyNonNull(final Object source, final Object target) throws Exception {
+        for(final Transfer transfer : transfers) {
+            final Object value = transfer.from.get(source);
+            if (value == null) { continue; }
+
+            if (transfer.direct || transfer.to.accepts(value)) {
+                transfer.to.set(target, value);
+            } else {
+                BeanUtils.setProperty(target, transfer.to.name, value);
+            }
+        }
+    }
+
+    @RequiredArgsConstructor
+    private static final class Transfer {
+        final BeanProperties.Property from;
+        final BeanProperties.Property to;
+        final boolean direct;
+    }
+}
@@ -0,0 +1,179 @@
+/*  Copyright (c) 2016
+ *  by Bjönd, Inc., Boston, MA
+ *
+ *  This software is furnished under a license and may be used only in
+ *  accordance with the terms of such license.  This software may not be
+ *  provided or otherwise made available to any other party.  No title to
+ *  nor ownership of the software is hereby transferred.
+ *
+ *  This software is the intellectual property of Bjönd, Inc.,
+ *  and is protected by the copyright laws of the United States of America.
+ *  All rights reserved internationally.
+ *
+ */
+
+package com.bjond.utilities;
+
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.primitives.Primitives;
+
+import lombok.extern.slf4j.Slf4j;
+
+
+/** <p> Per class cache of bean property accessors. </p>
+ *
+ *  The class is introspected once, the first time it is asked for, and every
+ *  getter and setter is turned into a MethodHandle adapted to Object types. From
+ *  then on reading or writing a property is a single handle invocation: no
+ *  describe(), no getMethod() and no String building.
+ *
+ *  Cached in a ClassValue so an entry lives exactly as long as its class.
+ *
+ * <a href="mailto:Stephen.Agneta@bjondinc.com">Steve 'Crash' Agneta</a>
+ *
+ */
+
+@Slf4j
+final class BeanProperties {
+    private final static MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+    private final static MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
+    private final static ClassValue<BeanProperties> cache = new ClassValue<BeanProperties>() {
+        @Override
+        protected BeanProperties computeValue(final Class<?> type) {
+            return new BeanProperties(type);
+        }
+    };
+
+    /** Readable properties, "class" excluded, in Introspector (name) order. */
+    final Property[] readable;
+
+    private final Map<String, Property> byName;
+
+    private BeanProperties(final Class<?> type) {
+        PropertyDescriptor[] descriptors;
+        try {
+            descriptors = Introspector.getBeanInfo(type).getPropertyDescriptors();
+        } catch(final IntrospectionException e) {
+            log.error("Unable to introspect {}", type.getName(), e);
+            descriptors = new PropertyDescriptor[0];
+        }
+
+        final MethodHandles.Lookup lookup = MethodHandles.lookup();
+        final List<Property> readableList = new ArrayList<>();
+        final Map<String, Property> map = new HashMap<>();
+        for(final PropertyDescriptor descriptor : descriptors) {
+            if ("class".equals(descriptor.getName()) || descriptor.getPropertyType() == null) { continue; }
+
+            final MethodHandle getter = unreflect(lookup, descriptor.getReadMethod(), GETTER_TYPE);
+            final MethodHandle setter = unreflect(lookup, descriptor.getWriteMethod(), SETTER_TYPE);
+            if (getter == null && setter == null) { continue; }
+
+            final Property property = new Property(descriptor.getName(), descriptor.getPropertyType(), getter, setter);
+            map.put(property.name, property);
+            if (getter != null) { readableList.add(property); }
+        }
+
+        readable = readableList.toArray(new Property[readableList.size()]);
+        byName = Collections.unmodifiableMap(map);
+    }
+
+    /**
+     * @param type a bean class.
+     * @return the cached accessors of type.
+     */
+    static BeanProperties of(final Class<?> type) {
+        return cache.get(type);
+    }
+
+    /**
+     * @param name property name.
+     * @return the property or null if type has no such property.
+     */
+    Property get(final String name) {
+        return byName.get(name);
+    }
+
+    // A handle of the given generic type or null if there is no method or it can't be accessed.
+    private static MethodHandle unreflect(final MethodHandles.Lookup lookup, final Method method, final MethodType type) {
+        if (method == null) { return null; }
+
+        try {
+            return lookup.unreflect(method).asType(type);
+        } catch(final IllegalAccessException e) {
+            // Public method of a non public class, for instance. Same as reflection would do.
+            try {
+                method.setAccessible(true);
+                return lookup.unreflect(method).asType(type);
+            } catch(final RuntimeException | IllegalAccessException e2) {
+                log.debug("Skipping inaccessible accessor {}", method, e2);
+                return null;
+            }
+        }
+    }
+
+    static final class Property {
+        final String name;
+        final Class<?> type;
+        private final Class<?> boxedType;
+        private final MethodHandle getter;
+        private final MethodHandle setter;
+
+        Property(final String name, final Class<?> type, final MethodHandle getter, final MethodHandle setter) {
+            this.name = name;
+            this.type = type;
+            this.boxedType = Primitives.wrap(type);
+            this.getter = getter;
+            this.setter = setter;
+        }
+
+        boolean isReadable() {
+            return getter != null;
+        }
+
+        boolean isWritable() {
+            return setter != null;
+        }
+
+        /**
+         * @param value a value or null.
+         * @return true if value can be handed to the setter as is; no conversion needed.
+         */
+        boolean accepts(final Object value) {
+            return value == null ? !type.isPrimitive() : boxedType.isInstance(value);
+        }
+
+        Object get(final Object bean) throws Exception {
+            try {
+                return (Object)getter.invokeExact(bean);
+            } catch(final Exception | Error e) {
+                throw e;
+            } catch(final Throwable t) {
+                throw new UndeclaredThrowableException(t);
+            }
+        }
+
+        void set(final Object bean, final Object value) throws Exception {
+            try {
+                setter.invokeExact(bean, value);
+            } catch(final Exception | Error e) {
+                throw e;
+            } catch(final Throwable t) {
+                throw new UndeclaredThrowableException(t);
+            }
+        }
+    }
+}
@@ -0,0 +1,435 @@
+/*  Copyright (c) 2016
+ *  by Bjönd, Inc., Boston, MA
+ *
+ *  This software is furnished under a license and may be used only in
+ *  accordance with the terms of such license.  This software may not be
+ *  provided or otherwise made available to any other party.  No title to
+ *  nor ownership of the software is hereby transferred.
+ *
+ *  This software is the intellectual property of Bjönd, Inc.,
+ *  and is protected by the copyright laws of the United States of America.
+ *  All rights reserved internationally.
+ *
+ */
+
+package com.bjond.utilities;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.Spliterator;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BiFunction;
+import java.util.function.BinaryOperator;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import javax.validation.constraints.NotNull;
+
+
+/** <p> Lazy Cartesian product of any number of collections. </p>
+ *
+ *  Nothing is built up front. Combinations are numbered 0 to size() - 1 and
+ *  walked like an odometer, the last factor turning fastest, so memory use is
+ *  that of the factors plus the one combination in hand. Each combination is an
+ *  immutable List in factor order; equal elements are kept, never merged.
+ *
+ *  The spliterator splits by index range and reports its exact size, so a
+ *  parallel stream divides the combinations evenly across the fork-join pool
+ *  and still keeps them in order.
+ *
+ *  findFirst, findAny and reduce evaluate the product directly on the fork-join
+ *  pool, chunk by chunk of the index space, and the finds stop testing as soon as
+ *  the answer is known: nothing is ever collected just to be filtered.
+ *
+ *  example usage:
+ *      MiscUtils.lazyCartesianProduct(colors, sizes, fabrics).stream()
+ *          .filter(rule::matches)
+ *          .forEach(...);
+ *
+ * @param <T> Type of the elements.
+ *
+ * <a href="mailto:Stephen.Agneta@bjondinc.com">Steve 'Crash' Agneta</a>
+ *
+ */
+
+final public class CartesianProduct<T> implements Iterable<List<T>> {
+    private final Object[][] factors;
+    private final long size;
+
+    /**
+     * @param factors the collections, in order. Copied; later changes to them are not seen.
+     * @throws ArithmeticException if there are more than Long.MAX_VALUE combinations.
+     */
+    public CartesianProduct(@NotNull(message="factors must not be null.") final List<? extends Collection<? extends T>> factors) {
+        this.factors = new Object[factors.size()][];
+        long count = 1;
+        for(int i = 0; i < this.factors.length; i++) {
+            this.factors[i] = factors.get(i).toArray();
+            count = Math.multiplyExact(count, (long)this.factors[i].length);
+        }
+        size = count;
+    }
+
+    /**
+     * @return exact number of combinations. 1 for no factors at all; 0 if any factor is empty.
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Random access to a single combination.
+     *
+     * @param index 0 to size() - 1
+     * @return the combination at index.
+     */
+    public List<T> get(final long index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " of " + size);
+        }
+        final int[] counters = new int[factors.length];
+        position(counters, index);
+        return tuple(counters);
+    }
+
+    @Override
+    public Iterator<List<T>> iterator() {
+        return new Iterator<List<T>>() {
+            private final Odometer odometer = new Odometer(0, size);
+
+            @Override
+            public boolean hasNext() {
+                return odometer.index < odometer.end;
+            }
+
+            @Override
+            public List<T> next() {
+                if (!hasNext()) { throw new NoSuchElementException(); }
+                return odometer.next();
+            }
+        };
+    }
+
+    @Override
+    public Spliterator<List<T>> spliterator() {
+        return new RangeSpliterator(0, size);
+    }
+
+    public Stream<List<T>> stream() {
+        return StreamSupport.stream(spliterator(), false);
+    }
+
+    public Stream<List<T>> parallelStream() {
+        return StreamSupport.stream(spliterator(), true);
+    }
+
+    /**
+     * Finds the first combination, in index order, that satisfies predicate. The
+     * index space is split across the common fork-join pool, the lower halves first,
+     * and once a match is found no combination past it is ever tested.
+     *
+     * @param predicate tested on combinations, concurrently. Must be thread safe.
+     * @return the first match, if any.
+     */
+    public Optional<List<T>> findFirst(@NotNull(message="predicate must not be null.") final Predicate<? super List<T>> predicate) {
+        final List<List<T>> found = findFirst(predicate, 1);
+        return found.isEmpty() ? Optional.empty() : Optional.of(found.get(0));
+    }
+
+    /**
+     * Finds the first limit combinations, in index order, that satisfy predicate. As
+     * soon as limit matches are known no combination past the last of them is tested.
+     *
+     * @param predicate tested on combinations, concurrently. Must be thread safe.
+     * @param limit most matches wanted.
+     * @return up to limit matches in index order.
+     */
+    public List<List<T>> findFirst(@NotNull(message="predicate must not be null.") final Predicate<? super List<T>> predicate, final int limit) {
+        if (limit < 1) throw new IllegalArgumentException("limit must be positive: " + limit);
+
+        final FirstMatches matches = new FirstMatches(limit);
+        ForkJoinPool.commonPool().invoke(new FindTask(0, size, predicate, matches));
+        return matches.toList();
+    }
+
+    /**
+     * Finds any combination that satisfies predicate, stopping every worker as soon
+     * as one is found. Cheaper than findFirst when which match doesn't matter.
+     *
+     * @param predicate tested on combinations, concurrently. Must be thread safe.
+     * @return a match, if any.
+     */
+    public Optional<List<T>> findAny(@NotNull(message="predicate must not be null.") final Predicate<? super List<T>> predicate) {
+        final AnyMatch match = new AnyMatch();
+        ForkJoinPool.commonPool().invoke(new FindTask(0, size, predicate, match));
+        return Optional.ofNullable(match.found);
+    }
+
+    /**
+     * Folds every combination across the common fork-join pool. Each chunk of the index
+     * space is folded from identity with accumulator and the partial results are merged
+     * with combiner, in index order.
+     *
+     * @param <R> Type of the result.
+     * @param identity starting value of every chunk; must be an identity for combiner.
+     * @param accumulator folds a combination into a partial result.
+     * @param combiner merges two partial results.
+     * @return the result.
+     */
+    public <R> R reduce(final R identity,
+                        @NotNull(message="accumulator must not be null.") final BiFunction<R, ? super List<T>, R> accumulator,
+                        @NotNull(message="combiner must not be null.") final BinaryOperator<R> combiner) {
+        return ForkJoinPool.commonPool().invoke(new ReduceTask<R>(0, size, identity, accumulator, combiner));
+    }
+
+    // Combinations a fork-join task tests itself rather than splitting further.
+    private long chunkSize() {
+        return Math.max(256, size / (ForkJoinPool.getCommonPoolParallelism() * 16L));
+    }
+
+    // Sets the counters to the combination at index; mixed radix, last factor least significant.
+    private void position(final int[] counters, long index) {
+        for(int i = factors.length - 1; i >= 0; i--) {
+            final int radix = factors[i].length;
+            counters[i] = (int)(index % radix);
+            index /= radix;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<T> tuple(final int[] counters) {
+        final Object[] elements = new Object[factors.length];
+        for(int i = 0; i < elements.length; i++) {
+            elements[i] = factors[i][counters[i]];
+        }
+        return (List<T>)new Tuple(elements);
+    }
+
+    // Walks combinations index to end. Positions itself on first use.
+    private final class Odometer {
+        long index;
+        final long end;
+        private int[] counters;
+
+        Odometer(final long index, final long end) {
+            this.index = index;
+            this.end = end;
+        }
+
+        List<T> next() {
+            if (counters == null) {
+                counters = new int[factors.length];
+                position(counters, index);
+            } else {
+                // Turn the last wheel, carrying into the ones before it.
+                for(int i = counters.length - 1; i >= 0; i--) {
+                    if (++counters[i] < factors[i].length) { break; }
+                    counters[i] = 0;
+                }
+            }
+            index++;
+            return tuple(counters);
+        }
+    }
+
+    private final class RangeSpliterator implements Spliterator<List<T>> {
+        private Odometer odometer;
+
+        RangeSpliterator(final long from, final long end) {
+            odometer = new Odometer(from, end);
+        }
+
+        @Override
+        public boolean tryAdvance(final Consumer<? super List<T>> action) {
+            if (odometer.index >= odometer.end) { return false; }
+            action.accept(odometer.next());
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(final Consumer<? super List<T>> action) {
+            while(odometer.index < odometer.end) {
+                action.accept(odometer.next());
+            }
+        }
+
+        @Override
+        public Spliterator<List<T>> trySplit() {
+            final long from = odometer.index;
+            final long middle = from + ((odometer.end - from) >>> 1);
+            if (middle <= from) { return null; }
+
+            // Hand off the first half, keep the second.
+            final Spliterator<List<T>> prefix = new RangeSpliterator(from, middle);
+            odometer = new Odometer(middle, odometer.end);
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return odometer.end - odometer.index;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | SIZED | SUBSIZED | IMMUTABLE | NONNULL;
+        }
+    }
+
+    // Where FindTask reports matches and learns when to stop.
+    private interface Matches<T> {
+        /** @return true if no combination at or past index can matter any more. */
+        boolean isDone(long index);
+
+        void found(long index, List<T> combination);
+    }
+
+    // Keeps the lowest limit matches and the index past which nothing can displace them.
+    private final class FirstMatches implements Matches<T> {
+        private final int limit;
+        private final TreeMap<Long, List<T>> matches = new TreeMap<>();
+        private volatile long cutoff = Long.MAX_VALUE;
+
+        FirstMatches(final int limit) {
+            this.limit = limit;
+        }
+
+        @Override
+        public boolean isDone(final long index) {
+            return index > cutoff;
+        }
+
+        @Override
+        public synchronized void found(final long index, final List<T> combination) {
+            if (index > cutoff) { return; }
+            matches.put(index, combination);
+            if (matches.size() > limit) { matches.pollLastEntry(); }
+            if (matches.size() == limit) { cutoff = matches.lastKey(); }
+        }
+
+        synchronized List<List<T>> toList() {
+            return new ArrayList<>(matches.values());
+        }
+    }
+
+    private final class AnyMatch implements Matches<T> {
+        private volatile List<T> found;
+
+        @Override
+        public boolean isDone(final long index) {
+            return found != null;
+        }
+
+        @Override
+        public void found(final long index, final List<T> combination) {
+            found = combination;
+        }
+    }
+
+    @SuppressWarnings("serial")
+    private final class FindTask extends RecursiveAction {
+        private final long from;
+        private final long end;
+        private final Predicate<? super List<T>> predicate;
+        private final Matches<T> matches;
+
+        FindTask(final long from, final long end, final Predicate<? super List<T>> predicate, final Matches<T> matches) {
+            this.from = from;
+            this.end = end;
+            this.predicate = predicate;
+            this.matches = matches;
+        }
+
+        @Override
+        protected void compute() {
+            if (matches.isDone(from)) { return; }
+
+            if (end - from > chunkSize()) {
+                // invokeAll runs the first, lower, half in this thread.
+                final long middle = from + ((end - from) >>> 1);
+                invokeAll(new FindTask(from, middle, predicate, matches), new FindTask(middle, end, predicate, matches));
+                return;
+            }
+
+            final Odometer odometer = new Odometer(from, end);
+            while(odometer.index < end && !matches.isDone(odometer.index)) {
+                final long index = odometer.index;
+                final List<T> combination = odometer.next();
+                if (predicate.test(combination)) {
+                    matches.found(index, combination);
+                }
+            }
+        }
+    }
+
+    @SuppressWarnings("serial")
+    private final class ReduceTask<R> extends RecursiveTask<R> {
+        private final long from;
+        private final long end;
+        private final R identity;
+        private final BiFunction<R, ? super List<T>, R> accumulator;
+        private final BinaryOperator<R> combiner;
+
+        ReduceTask(final long from, final long end, final R identity,
+                   final BiFunction<R, ? super List<T>, R> accumulator, final BinaryOperator<R> combiner) {
+            this.from = from;
+            this.end = end;
+            this.identity = identity;
+            this.accumulator = accumulator;
+            this.combiner = combiner;
+        }
+
+        @Override
+        protected R compute() {
+            if (end - from > chunkSize()) {
+                final long middle = from + ((end - from) >>> 1);
+                final ReduceTask<R> upper = new ReduceTask<R>(middle, end, identity, accumulator, combiner);
+                upper.fork();
+                final R lower = new ReduceTask<R>(from, middle, identity, accumulator, combiner).compute();
+                return combiner.apply(lower, upper.join());
+            }
+
+            R result = identity;
+            final Odometer odometer = new Odometer(from, end);
+            while(odometer.index < end) {
+                result = accumulator.apply(result, odometer.next());
+            }
+            return result;
+        }
+    }
+
+    // Immutable, fixed size combination.
+    private static final class Tuple extends AbstractList<Object> {
+        private final Object[] elements;
+
+        Tuple(final Object[] elements) {
+            this.elements = elements;
+        }
+
+        @Override
+        public Object get(final int index) {
+            return elements[index];
+        }
+
+        @Override
+        public int size() {
+            return elements.length;
+        }
+
+        @Override
+        public Object[] toArray() {
+            return Arrays.copyOf(elements, elements.length);
+        }
+    }
+}
@@ -0,0 +1,249 @@
+/*  Copyright (c) 2016
+ *  by Bjönd, Inc., Boston, MA
+ *
+ *  This software is furnished under a license and may be used only in
+ *  accordance with the terms of such license.  This software may not be
+ *  provided or otherwise made available to any other party.  No title to
+ *  nor ownership of the software is hereby transferred.
+ *
+ *  This software is the intellectual property of Bjönd, Inc.,
+ *  and is protected by the copyright laws of the United States of America.
+ *  All rights reserved internationally.
+ *
+ */
+
+package com.bjond.utilities;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+
+import javax.validation.constraints.NotNull;
+
+
+/** <p> Message digests without the provider lookup, and streaming hashing. </p>
+ *
+ *  Each algorithm keeps one MessageDigest per thread, found once and reset
+ *  between uses. Streams are read through a per thread buffer, channels through
+ *  a per thread direct buffer, and files past a megabyte are mapped and hashed
+ *  a chunk at a time rather than copied through the heap at all.
+ *
+ *  example usage:
+ *      String etag = Digests.hex(Digests.hash(Digests.Algorithm.SHA256, path));
+ *
+ * <a href="mailto:Stephen.Agneta@bjondinc.com">Steve 'Crash' Agneta</a>
+ *
+ */
+
+final public class Digests {
+    private final static int BUFFER_SIZE = 64 * 1024;
+    // Files at least this large are mapped rather than read.
+    private final static long MAP_THRESHOLD = 1024 * 1024;
+    // How much of a file is mapped at a time. Keeps the address space used bounded.
+    private final static long MAP_CHUNK = 64 * 1024 * 1024;
+
+    private final static char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private final static ThreadLocal<byte[]> streamBuffer = ThreadLocal.withInitial(() -> new byte[BUFFER_SIZE]);
+    private final static ThreadLocal<ByteBuffer> channelBuffer = ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(BUFFER_SIZE));
+
+    public enum Algorithm {
+        MD5("MD5"),
+        SHA1("SHA-1"),
+        SHA256("SHA-256");
+
+        private final String name;
+        private final MessageDigest prototype;
+        private final ThreadLocal<MessageDigest> perThread;
+
+        Algorithm(final String name) {
+            this.name = name;
+            try {
+                // Every Java platform is required to support all three.
+                this.prototype = MessageDigest.getInstance(name);
+            } catch(final NoSuchAlgorithmException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+            this.perThread = ThreadLocal.withInitial(this::newInstance);
+        }
+
+        /**
+         * @return the standard name of the algorithm, as MessageDigest.getInstance takes it.
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * The calling thread's instance, reset. It is handed out again by the next
+         * call on this thread, so finish with it before hashing anything else and
+         * never pass it to another thread.
+         *
+         * @return the reset per thread MessageDigest.
+         */
+        public MessageDigest get() {
+            final MessageDigest digest = perThread.get();
+            digest.reset();
+            return digest;
+        }
+
+        /**
+         * @return a new MessageDigest, the caller's to keep. Cloned where the provider
+         *         allows it so there is no provider lookup.
+         */
+        public MessageDigest newInstance() {
+            try {
+                return (MessageDigest)prototype.clone();
+            } catch(final CloneNotSupportedException e) {
+                try {
+                    return MessageDigest.getInstance(name, prototype.getProvider());
+                } catch(final NoSuchAlgorithmException impossible) {
+                    throw new IllegalStateException(impossible);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param algorithm the digest to use.
+     * @param bytes the bytes to hash.
+     * @return the digest of bytes.
+     */
+    public static byte[] hash(@NotNull(message="algorithm must not be null.") final Algorithm algorithm,
+                              @NotNull(message="bytes must not be null.") final byte[] bytes) {
+        return algorithm.get().digest(bytes);
+    }
+
+    /**
+     * @param algorithm the digest to use.
+     * @param buffer hashed from its position to its limit; left at its limit.
+     * @return the digest of the remaining bytes of buffer.
+     */
+    public static byte[] hash(@NotNull(message="algorithm must not be null.") final Algorithm algorithm,
+                              @NotNull(message="buffer must not be null.") final ByteBuffer buffer) {
+        final MessageDigest digest = algorithm.get();
+        digest.update(buffer);
+        return digest.digest();
+    }
+
+    /**
+     * Hashes what is left of the stream. The stream is not closed. A FileInputStream
+     * is hashed through its channel.
+     *
+     * @param algorithm the digest to use.
+     * @param in the stream to hash.
+     * @return the digest of the rest of in.
+     * @throws IOException if reading fails.
+     */
+    public static byte[] hash(@NotNull(message="algorithm must not be null.") final Algorithm algorithm,
+                              @NotNull(message="in must not be null.") final InputStream in) throws IOException {
+        if (in instanceof FileInputStream) {
+            return hash(algorithm, ((FileInputStream)in).getChannel());
+        }
+
+        final MessageDigest digest = algorithm.get();
+        final byte[] buffer = streamBuffer.get();
+        for(int n; (n = in.read(buffer)) != -1; ) {
+            digest.update(buffer, 0, n);
+        }
+        return digest.digest();
+    }
+
+    /**
+     * Hashes the channel from its position to its end, mapping it a chunk at a
+     * time if there is a megabyte or more of it. The position is left at the end.
+     *
+     * @param algorithm the digest to use.
+     * @param channel the channel to hash. It is not closed.
+     * @return the digest of the rest of channel.
+     * @throws IOException if reading fails.
+     */
+    public static byte[] hash(@NotNull(message="algorithm must not be null.") final Algorithm algorithm,
+                              @NotNull(message="channel must not be null.") final FileChannel channel) throws IOException {
+        final MessageDigest digest = algorithm.get();
+        final long size = channel.size();
+        long position = channel.position();
+
+        if (size - position >= MAP_THRESHOLD) {
+            while(position < size) {
+                final long length = Math.min(MAP_CHUNK, size - position);
+                digest.update(channel.map(FileChannel.MapMode.READ_ONLY, position, length));
+                position += length;
+            }
+            channel.position(position);
+            return digest.digest();
+        }
+
+        final ByteBuffer buffer = channelBuffer.get();
+        buffer.clear();
+        while(channel.read(buffer) != -1) {
+            buffer.flip();
+            digest.update(buffer);
+            buffer.clear();
+        }
+        return digest.digest();
+    }
+
+    /**
+     * @param algorithm the digest to use.
+     * @param file the file to hash.
+     * @return the digest of the file's contents.
+     * @throws IOException if reading fails.
+     */
+    public static byte[] hash(@NotNull(message="algorithm must not be null.") final Algorithm algorithm,
+                              @NotNull(message="file must not be null.") final Path file) throws IOException {
+        try(final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return hash(algorithm, channel);
+        }
+    }
+
+    /**
+     * @param bytes a digest, or any bytes.
+     * @return bytes as lower case hex.
+     */
+    public static String hex(@NotNull(message="bytes must not be null.") final byte[] bytes) {
+        final char[] chars = new char[bytes.length * 2];
+        for(int i = 0; i < bytes.length; i++) {
+            chars[2 * i] = HEX_DIGITS[(bytes[i] >> 4) & 0xF];
+            chars[2 * i + 1] = HEX_DIGITS[bytes[i] & 0xF];
+        }
+        return new String(chars);
+    }
+
+    /**
+     * @param bytes a digest, or any bytes.
+     * @param out receives bytes as lower case hex.
+     * @return out
+     */
+    public static StringBuilder appendHex(@NotNull(message="bytes must not be null.") final byte[] bytes,
+                                          @NotNull(message="out must not be null.") final StringBuilder out) {
+        out.ensureCapacity(out.length() + bytes.length * 2);
+        for(final byte b : bytes) {
+            out.append(HEX_DIGITS[(b >> 4) & 0xF]).append(HEX_DIGITS[b & 0xF]);
+        }
+        return out;
+    }
+
+    /**
+     * @param bytes a digest, or any bytes.
+     * @return bytes in standard, padded base64.
+     */
+    public static String base64(@NotNull(message="bytes must not be null.") final byte[] bytes) {
+        return Base64.getEncoder().encodeToString(bytes);
+    }
+
+    /**
+     * @param bytes a digest, or any bytes.
+     * @return bytes in unpadded, URL safe base64. Fit for file names and cache keys.
+     */
+    public static String base64Url(@NotNull(message="bytes must not be null.") final byte[] bytes) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+}
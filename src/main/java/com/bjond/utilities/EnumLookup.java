@@ -0,0 +1,167 @@
+/*  Copyright (c) 2016
+ *  by Bjönd, Inc., Boston, MA
+ *
+ *  This software is furnished under a license and may be used only in
+ *  accordance with the terms of such license.  This software may not be
+ *  provided or otherwise made available to any other party.  No title to
+ *  nor ownership of the software is hereby transferred.
+ *
+ *  This software is the intellectual property of Bjönd, Inc.,
+ *  and is protected by the copyright laws of the United States of America.
+ *  All rights reserved internationally.
+ *
+ */
+
+package com.bjond.utilities;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.validation.constraints.NotNull;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import lombok.extern.slf4j.Slf4j;
+
+
+/** <p> Constant time, case insensitive lookup of enum constants by name. </p>
+ *
+ *  Built once per enum type and cached in a ClassValue. A lookup hashes the
+ *  case folded characters of the string in place and compares the one or two
+ *  candidates ignoring case: no constants array is cloned, nothing is allocated.
+ *
+ *  Matching is that of String.equalsIgnoreCase. Should two constants differ only
+ *  by case the first declared wins, just as a linear scan would find it.
+ *
+ *  Optionally the names given by @JsonProperty on the constants are accepted as
+ *  aliases, so a value serialized by Jackson parses back. Constant names always
+ *  take precedence over aliases.
+ *
+ *  example usage:
+ *      Color c = EnumLookup.of(Color.class).get("red");
+ *
+ * @param <E> Type of the enum.
+ *
+ * <a href="mailto:Stephen.Agneta@bjondinc.com">Steve 'Crash' Agneta</a>
+ *
+ */
+
+@Slf4j
+final public class EnumLookup<E extends Enum<E>> {
+    private final static ClassValue<EnumLookup<?>> cache = new ClassValue<EnumLookup<?>>() {
+        @Override
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        protected EnumLookup<?> computeValue(final Class<?> type) {
+            return new EnumLookup(type.asSubclass(Enum.class));
+        }
+    };
+
+    private final Table<E> names;
+    private final Table<E> namesAndAliases;
+
+    private EnumLookup(final Class<E> enumType) {
+        final E[] constants = enumType.getEnumConstants();
+        final List<String> keys = new ArrayList<>();
+        final List<E> values = new ArrayList<>();
+        for(final E constant : constants) {
+            keys.add(constant.name());
+            values.add(constant);
+        }
+        names = new Table<>(keys, values);
+
+        for(final E constant : constants) {
+            try {
+                final JsonProperty alias = enumType.getField(constant.name()).getAnnotation(JsonProperty.class);
+                if (alias != null && !alias.value().isEmpty()) {
+                    keys.add(alias.value());
+                    values.add(constant);
+                }
+            } catch(final NoSuchFieldException e) {
+                log.warn("No field for enum constant {}.{}", enumType.getName(), constant.name());
+            }
+        }
+        namesAndAliases = new Table<>(keys, values);
+    }
+
+    /**
+     * @param <E> Type of the enum.
+     * @param enumType the enum class.
+     * @return the cached lookup of enumType.
+     */
+    @SuppressWarnings("unchecked")
+    public static <E extends Enum<E>> EnumLookup<E> of(@NotNull(message="enumType must not be null.") final Class<E> enumType) {
+        return (EnumLookup<E>)cache.get(enumType);
+    }
+
+    /**
+     * @param name constant name, any case. May be null.
+     * @return the constant or null if there is none by that name.
+     */
+    public E get(final String name) {
+        return names.get(name);
+    }
+
+    /**
+     * @param name constant name or @JsonProperty alias, any case. May be null.
+     * @return the constant or null if there is none by that name or alias.
+     */
+    public E getWithAliases(final String name) {
+        return namesAndAliases.get(name);
+    }
+
+    // Open addressing hash table keyed by case folded string.
+    private static final class Table<E> {
+        private final String[] keys;
+        private final int[] hashes;
+        private final Object[] values;
+        private final int mask;
+
+        Table(final List<String> keyList, final List<E> valueList) {
+            // At most half full so probes stay short.
+            int capacity = 2;
+            while(capacity < keyList.size() * 2) { capacity <<= 1; }
+            keys = new String[capacity];
+            hashes = new int[capacity];
+            values = new Object[capacity];
+            mask = capacity - 1;
+
+            for(int i = 0; i < keyList.size(); i++) {
+                final String key = keyList.get(i);
+                final int hash = hash(key);
+                int slot = hash & mask;
+                boolean duplicate = false;
+                while(keys[slot] != null) {
+                    if (hashes[slot] == hash && keys[slot].equalsIgnoreCase(key)) { duplicate = true; break; }
+                    slot = (slot + 1) & mask;
+                }
+                if (duplicate) { continue; } // First one in wins.
+
+                keys[slot] = key;
+                hashes[slot] = hash;
+                values[slot] = valueList.get(i);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        E get(final String key) {
+            if (key == null) { return null; }
+
+            final int hash = hash(key);
+            for(int slot = hash & mask; keys[slot] != null; slot = (slot + 1) & mask) {
+                if (hashes[slot] == hash && keys[slot].equalsIgnoreCase(key)) {
+                    return (E)values[slot];
+                }
+            }
+            return null;
+        }
+
+        // Equal for any two strings equalsIgnoreCase considers equal.
+        private static int hash(final String s) {
+            int h = 0;
+            for(int i = 0; i < s.length(); i++) {
+                h = 31 * h + Character.toLowerCase(Character.toUpperCase(s.charAt(i)));
+            }
+            return h ^ (h >>> 16);
+        }
+    }
+}
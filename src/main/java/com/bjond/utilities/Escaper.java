@@ -0,0 +1,210 @@
+/*  Copyright (c) 2016
+ *  by Bjönd, Inc., Boston, MA
+ *
+ *  This software is furnished under a license and may be used only in
+ *  accordance with the terms of such license.  This software may not be
+ *  provided or otherwise made available to any other party.  No title to
+ *  nor ownership of the software is hereby transferred.
+ *
+ *  This software is the intellectual property of Bjönd, Inc.,
+ *  and is protected by the copyright laws of the United States of America.
+ *  All rights reserved internationally.
+ *
+ */
+
+package com.bjond.utilities;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import javax.validation.constraints.NotNull;
+
+
+/** <p> Single pass string literal escaping driven by a table. </p>
+ *
+ *  Each escaper holds a replacement for every ASCII character that needs one
+ *  and the quote character that delimits literals. Escaping scans the input
+ *  once and appends the unescaped runs between replacements in bulk, straight
+ *  into the caller's StringBuilder or Appendable. A String with nothing to
+ *  escape is handed back as is, nothing is allocated.
+ *
+ *  Escapers are immutable; with() derives a new table from an existing one:
+ *
+ *      Escaper.DROOLS.with('\\', "\\\\").escape(s);
+ *      Escaper.CYPHER.quote(name, builder);
+ *
+ * <a href="mailto:Stephen.Agneta@bjondinc.com">Steve 'Crash' Agneta</a>
+ *
+ */
+
+final public class Escaper {
+    private final static int TABLE_SIZE = 128;
+
+    /** Drools string literals: backslash before single and double quotes, as escapeSingleAndDoubleQuotes has always done. */
+    public final static Escaper DROOLS = of('"')
+        .with('"', "\\\"")
+        .with('\'', "\\'");
+
+    /** Cypher string literals: quotes, backslash and the usual control character escapes. */
+    public final static Escaper CYPHER = of('"')
+        .with('"', "\\\"")
+        .with('\'', "\\'")
+        .with('\\', "\\\\")
+        .with('\b', "\\b")
+        .with('\f', "\\f")
+        .with('\n', "\\n")
+        .with('\r', "\\r")
+        .with('\t', "\\t");
+
+    /** JSON strings per RFC 7159: double quote, backslash and every control character. */
+    public final static Escaper JSON;
+    static {
+        Escaper json = of('"')
+            .with('"', "\\\"")
+            .with('\\', "\\\\");
+        for(char c = 0; c < 0x20; c++) {
+            json = json.with(c, String.format("\\u%04x", (int)c));
+        }
+        JSON = json
+            .with('\b', "\\b")
+            .with('\f', "\\f")
+            .with('\n', "\\n")
+            .with('\r', "\\r")
+            .with('\t', "\\t");
+    }
+
+    private final char quote;
+    private final String[] replacements; // Indexed by char, null where it stands as is.
+
+    private Escaper(final char quote, final String[] replacements) {
+        this.quote = quote;
+        this.replacements = replacements;
+    }
+
+    /**
+     * @param quote the character quote() delimits literals with.
+     * @return an escaper that escapes nothing yet.
+     */
+    public static Escaper of(final char quote) {
+        return new Escaper(quote, new String[TABLE_SIZE]);
+    }
+
+    /**
+     * @param c ASCII character to escape.
+     * @param replacement what c is written as.
+     * @return a new escaper: this one with c escaped as replacement.
+     */
+    public Escaper with(final char c, @NotNull(message="replacement must not be null.") final String replacement) {
+        if (c >= TABLE_SIZE) throw new IllegalArgumentException("Only ASCII characters may be escaped: " + (int)c);
+
+        final String[] table = Arrays.copyOf(replacements, TABLE_SIZE);
+        table[c] = replacement;
+        return new Escaper(quote, table);
+    }
+
+    /**
+     * @param s the string to escape. May be null.
+     * @return s escaped; s itself if nothing in it needs escaping.
+     */
+    public String escape(final String s) {
+        if (s == null) return null;
+
+        final int first = firstEscape(s, 0);
+        if (first == s.length()) return s;
+
+        final StringBuilder out = new StringBuilder(s.length() + 16);
+        out.append(s, 0, first);
+        return escapeFrom(s, first, out).toString();
+    }
+
+    /**
+     * @param s the characters to escape.
+     * @param out receives s escaped.
+     * @return out
+     */
+    public StringBuilder escape(@NotNull(message="s must not be null.") final CharSequence s,
+                                @NotNull(message="out must not be null.") final StringBuilder out) {
+        return escapeFrom(s, 0, out);
+    }
+
+    /**
+     * @param <A> Type of the Appendable.
+     * @param s the characters to escape.
+     * @param out receives s escaped.
+     * @return out
+     * @throws IOException if out does.
+     */
+    public <A extends Appendable> A escape(@NotNull(message="s must not be null.") final CharSequence s,
+                                           @NotNull(message="out must not be null.") final A out) throws IOException {
+        int run = 0;
+        for(int i = firstEscape(s, 0); i < s.length(); i = firstEscape(s, i + 1)) {
+            out.append(s, run, i).append(replacements[s.charAt(i)]);
+            run = i + 1;
+        }
+        out.append(s, run, s.length());
+        return out;
+    }
+
+    /**
+     * @param s the string to quote. May be null.
+     * @return s escaped and enclosed in the quote character.
+     */
+    public String quote(final String s) {
+        if (s == null) return null;
+        return quote(s, new StringBuilder(s.length() + 2)).toString();
+    }
+
+    /**
+     * @param s the characters to quote.
+     * @param out receives s escaped and enclosed in the quote character.
+     * @return out
+     */
+    public StringBuilder quote(@NotNull(message="s must not be null.") final CharSequence s,
+                               @NotNull(message="out must not be null.") final StringBuilder out) {
+        out.append(quote);
+        escapeFrom(s, 0, out);
+        return out.append(quote);
+    }
+
+    /**
+     * @param <A> Type of the Appendable.
+     * @param s the characters to quote.
+     * @param out receives s escaped and enclosed in the quote character.
+     * @return out
+     * @throws IOException if out does.
+     */
+    public <A extends Appendable> A quote(@NotNull(message="s must not be null.") final CharSequence s,
+                                          @NotNull(message="out must not be null.") final A out) throws IOException {
+        out.append(quote);
+        escape(s, out);
+        out.append(quote);
+        return out;
+    }
+
+    /**
+     * @param s the characters to check.
+     * @return true if anything in s needs escaping.
+     */
+    public boolean needsEscaping(@NotNull(message="s must not be null.") final CharSequence s) {
+        return firstEscape(s, 0) < s.length();
+    }
+
+    // StringBuilder twin of escape(CharSequence, Appendable), free of IOException.
+    private StringBuilder escapeFrom(final CharSequence s, final int from, final StringBuilder out) {
+        int run = from;
+        for(int i = firstEscape(s, from); i < s.length(); i = firstEscape(s, i + 1)) {
+            out.append(s, run, i).append(replacements[s.charAt(i)]);
+            run = i + 1;
+        }
+        return out.append(s, run, s.length());
+    }
+
+    private int firstEscape(final CharSequence s, int i) {
+        final String[] table = replacements;
+        for(final int length = s.length(); i < length; i++) {
+            final char c = s.charAt(i);
+            if (c < TABLE_SIZE && table[c] != null) break;
+        }
+        return i;
+    }
+}
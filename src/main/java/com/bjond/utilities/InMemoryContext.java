@@ -0,0 +1,201 @@
+/*  Copyright (c) 2016
+ *  by Bjönd, Inc., Boston, MA
+ *
+ *  This software is furnished under a license and may be used only in
+ *  accordance with the terms of such license.  This software may not be
+ *  provided or otherwise made available to any other party.  No title to
+ *  nor ownership of the software is hereby transferred.
+ *
+ *  This software is the intellectual property of Bjönd, Inc.,
+ *  and is protected by the copyright laws of the United States of America.
+ *  All rights reserved internationally.
+ *
+ */
+
+package com.bjond.utilities;
+
+import java.util.Hashtable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.naming.Binding;
+import javax.naming.Context;
+import javax.naming.Name;
+import javax.naming.NameAlreadyBoundException;
+import javax.naming.NameClassPair;
+import javax.naming.NameNotFoundException;
+import javax.naming.NameParser;
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.OperationNotSupportedException;
+
+
+/** <p> A flat, in memory JNDI Context. </p>
+ *
+ *  Stands in for the application server's naming context where there is none,
+ *  in unit tests first of all: bind the beans under their JNDI names and hand it
+ *  to a ServiceLocator. Names are plain strings, there are no subcontexts, and
+ *  it is safe for concurrent use.
+ *
+ *  example usage:
+ *      InMemoryContext context = new InMemoryContext();
+ *      context.bind("java:global/app/PatientService", patientService);
+ *      ServiceLocator.setDefault(new ServiceLocator(() -> context));
+ *
+ * <a href="mailto:Stephen.Agneta@bjondinc.com">Steve 'Crash' Agneta</a>
+ *
+ */
+
+final public class InMemoryContext implements Context {
+    private final ConcurrentMap<String, Object> bindings = new ConcurrentHashMap<>();
+    private final Hashtable<Object, Object> environment = new Hashtable<>();
+
+    @Override
+    public Object lookup(final String name) throws NamingException {
+        final Object o = bindings.get(name);
+        if (o == null) throw new NameNotFoundException(name);
+        return o;
+    }
+
+    @Override
+    public Object lookup(final Name name) throws NamingException {
+        return lookup(name.toString());
+    }
+
+    @Override
+    public void bind(final String name, final Object obj) throws NamingException {
+        if (bindings.putIfAbsent(name, obj) != null) throw new NameAlreadyBoundException(name);
+    }
+
+    @Override
+    public void bind(final Name name, final Object obj) throws NamingException {
+        bind(name.toString(), obj);
+    }
+
+    @Override
+    public void rebind(final String name, final Object obj) throws NamingException {
+        bindings.put(name, obj);
+    }
+
+    @Override
+    public void rebind(final Name name, final Object obj) throws NamingException {
+        rebind(name.toString(), obj);
+    }
+
+    @Override
+    public void unbind(final String name) throws NamingException {
+        bindings.remove(name);
+    }
+
+    @Override
+    public void unbind(final Name name) throws NamingException {
+        unbind(name.toString());
+    }
+
+    @Override
+    public void rename(final String oldName, final String newName) throws NamingException {
+        final Object o = lookup(oldName);
+        bind(newName, o);
+        bindings.remove(oldName, o);
+    }
+
+    @Override
+    public void rename(final Name oldName, final Name newName) throws NamingException {
+        rename(oldName.toString(), newName.toString());
+    }
+
+    @Override
+    public NamingEnumeration<NameClassPair> list(final String name) throws NamingException {
+        throw new OperationNotSupportedException("list");
+    }
+
+    @Override
+    public NamingEnumeration<NameClassPair> list(final Name name) throws NamingException {
+        throw new OperationNotSupportedException("list");
+    }
+
+    @Override
+    public NamingEnumeration<Binding> listBindings(final String name) throws NamingException {
+        throw new OperationNotSupportedException("listBindings");
+    }
+
+    @Override
+    public NamingEnumeration<Binding> listBindings(final Name name) throws NamingException {
+        throw new OperationNotSupportedException("listBindings");
+    }
+
+    @Override
+    public void destroySubcontext(final String name) throws NamingException {
+        throw new OperationNotSupportedException("destroySubcontext");
+    }
+
+    @Override
+    public void destroySubcontext(final Name name) throws NamingException {
+        throw new OperationNotSupportedException("destroySubcontext");
+    }
+
+    @Override
+    public Context createSubcontext(final String name) throws NamingException {
+        throw new OperationNotSupportedException("createSubcontext");
+    }
+
+    @Override
+    public Context createSubcontext(final Name name) throws NamingException {
+        throw new OperationNotSupportedException("createSubcontext");
+    }
+
+    @Override
+    public Object lookupLink(final String name) throws NamingException {
+        return lookup(name);
+    }
+
+    @Override
+    public Object lookupLink(final Name name) throws NamingException {
+        return lookup(name);
+    }
+
+    @Override
+    public NameParser getNameParser(final String name) throws NamingException {
+        throw new OperationNotSupportedException("getNameParser");
+    }
+
+    @Override
+    public NameParser getNameParser(final Name name) throws NamingException {
+        throw new OperationNotSupportedException("getNameParser");
+    }
+
+    @Override
+    public Name composeName(final Name name, final Name prefix) throws NamingException {
+        return ((Name)prefix.clone()).addAll(name);
+    }
+
+    @Override
+    public String composeName(final String name, final String prefix) throws NamingException {
+        return prefix.isEmpty() ? name : prefix + "/" + name;
+    }
+
+    @Override
+    public Object addToEnvironment(final String propName, final Object propVal) throws NamingException {
+        return environment.put(propName, propVal);
+    }
+
+    @Override
+    public Object removeFromEnvironment(final String propName) throws NamingException {
+        return environment.remove(propName);
+    }
+
+    @Override
+    public Hashtable<?, ?> getEnvironment() throws NamingException {
+        return new Hashtable<>(environment);
+    }
+
+    @Override
+    public void close() throws NamingException {
+        // Nothing held; the bindings stay for the next ServiceLocator context.
+    }
+
+    @Override
+    public String getNameInNamespace() throws NamingException {
+        return "";
+    }
+}
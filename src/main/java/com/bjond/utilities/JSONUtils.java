@@ -17,7 +17,12 @@ package com.bjond.utilities;
 // Jackson Engine
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.StringWriter;
+import java.math.BigInteger;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -31,12 +36,21 @@ import com.bjond.persistence.json.schema.CustomBjondWrapper;
 import com.fasterxml.jackson.annotation.JsonAutoDetect;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.PropertyAccessor;
+import com.fasterxml.jackson.core.Base64Variant;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.core.util.DefaultPrettyPrinter;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedOutputStream;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
 import com.fasterxml.jackson.module.jsonSchema.JsonSchema;
 
 /** <p> Contains all JSON related utilities and abstracts the
@@ -50,6 +64,10 @@ import com.fasterxml.jackson.module.jsonSchema.JsonSchema;
 @SuppressWarnings("deprecation")
 public class JSONUtils {
     private final static ObjectMapper mapper;
+    private final static ObjectWriter streamWriter;
+    private final static ObjectWriter prettyWriter;
+    private final static ObjectReader mapReader;
+    private final static ObjectReader objectMapReader;
 
 
     
@@ -70,6 +88,19 @@ public class JSONUtils {
         // Don't fail when a custom property filter can't be resolved.
 		SimpleFilterProvider filters = new SimpleFilterProvider().setFailOnUnknownId(false);
 		mapper.setFilters(filters); // Use the deprecated method here until we resolve Jackson version issues.
+
+        // Writes to streams the caller owns; Jackson would otherwise close them.
+        streamWriter = mapper.writer().without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        prettyWriter = mapper.writerWithDefaultPrettyPrinter();
+
+        // toMap and toObjectMap have always parsed strictly, as a default ObjectMapper does.
+        // Readers are immutable and keep their deserializers, unlike a new ObjectMapper per call.
+        mapReader = mapper.readerFor(new TypeReference<HashMap<String, Object>>(){})
+            .without(JsonParser.Feature.ALLOW_UNQUOTED_CONTROL_CHARS)
+            .without(JsonParser.Feature.ALLOW_BACKSLASH_ESCAPING_ANY_CHARACTER);
+        objectMapReader = mapper.readerFor(new TypeReference<HashMap<Object, Object>>(){})
+            .without(JsonParser.Feature.ALLOW_UNQUOTED_CONTROL_CHARS)
+            .without(JsonParser.Feature.ALLOW_BACKSLASH_ESCAPING_ANY_CHARACTER);
     }
 
 	/**
@@ -83,29 +114,170 @@ public class JSONUtils {
 	 * @exception IOException if an error occurs
 	 */
 	public static @NotNull(message="obj must not be null.") String toJSON(final Object obj) throws IOException{
-        val writer = new StringWriter();
-	    constructJackson().writeValue(writer, obj);
-	
-	    return writer.toString();
+	    return constructJackson().writeValueAsString(obj); // Jackson's recycled buffers rather than a StringWriter.
+	}
+
+	/**
+	 *  <code>toJSONBytes</code> method returns the UTF-8 encoded JSON representation of OBJ.
+	 *  Encoded straight to bytes through Jackson's recycled buffers, there is no intermediate String.
+	 *  Characters outside the Basic Multilingual Plane come out as escaped surrogate pairs, as
+	 *  Jackson's UTF-8 generator writes them; the JSON is equivalent to that of toJSON.
+	 *
+	 * @param obj an <code>Object</code> value
+	 * @return the UTF-8 encoded JSON.
+	 * @exception IOException if an error occurs
+	 */
+	public static byte[] toJSONBytes(final Object obj) throws IOException {
+	    return constructJackson().writeValueAsBytes(obj);
+	}
+
+	/**
+	 *  <code>writeJSON</code> method writes the UTF-8 encoded JSON representation of OBJ to OUT.
+	 *  OUT is flushed but left open, it is the caller's to close.
+	 *
+	 * @param obj an <code>Object</code> value
+	 * @param out where the JSON is written.
+	 * @exception IOException if an error occurs
+	 */
+	public static void writeJSON(final Object obj, @NotNull(message="out must not be null.") final OutputStream out) throws IOException {
+	    streamWriter.writeValue(out, obj);
+	}
+
+	/**
+	 *  <code>writeJSON</code> method writes the UTF-8 encoded JSON representation of OBJ into
+	 *  BUFFER at its position, which is advanced past it. If it doesn't fit the position is
+	 *  left where it was and a BufferOverflowException thrown.
+	 *
+	 * @param obj an <code>Object</code> value
+	 * @param buffer where the JSON is written.
+	 * @return the number of bytes written.
+	 * @exception IOException if an error occurs
+	 */
+	public static int writeJSON(final Object obj, @NotNull(message="buffer must not be null.") final ByteBuffer buffer) throws IOException {
+	    final int start = buffer.position();
+	    try {
+	        streamWriter.writeValue(new ByteBufferBackedOutputStream(buffer), obj);
+	    } catch(final BufferOverflowException e) {
+	        buffer.position(start);
+	        throw e;
+	    }
+	    return buffer.position() - start;
 	}
 	
 	public static @NotNull(message="obj must not be null.") String toPrettyJSON(final Object obj) throws IOException{
-	    return constructJackson().writerWithDefaultPrettyPrinter().writeValueAsString(obj);
+	    return prettyWriter.writeValueAsString(obj);
 	}
 	
+	/**
+	 *  <code>prettyPrint</code> method reformats a JSON document for people to read.
+	 *  Streamed token by token, see reformat, so keys keep their order and numbers their digits.
+	 *
+	 * @param jsonString a JSON document.
+	 * @return the document pretty printed.
+	 * @exception IOException if the document is not valid JSON.
+	 */
 	public static String prettyPrint(String jsonString) throws IOException {
-	    val obj = toMap(jsonString);
-	    return toPrettyJSON(obj);
+	    return reformat(jsonString, true);
+	}
+
+	/**
+	 *  <code>minify</code> method strips a JSON document of all insignificant whitespace.
+	 *
+	 * @param jsonString a JSON document.
+	 * @return the document minified.
+	 * @exception IOException if the document is not valid JSON.
+	 */
+	public static String minify(final String jsonString) throws IOException {
+	    return reformat(jsonString, false);
+	}
+
+	/**
+	 *  <code>prettyPrint</code> method reformats the UTF-8 JSON read from IN for people to read
+	 *  and writes it to OUT. Neither stream is closed.
+	 *
+	 * @param in a JSON document.
+	 * @param out receives the document pretty printed, in UTF-8.
+	 * @exception IOException if the document is not valid JSON or a stream fails.
+	 */
+	public static void prettyPrint(@NotNull(message="in must not be null.") final InputStream in,
+	                               @NotNull(message="out must not be null.") final OutputStream out) throws IOException {
+	    reformat(in, out, true);
+	}
+
+	/**
+	 *  <code>minify</code> method strips the JSON read from IN of all insignificant whitespace
+	 *  and writes it to OUT. Neither stream is closed.
+	 *
+	 * @param in a JSON document.
+	 * @param out receives the document minified, in UTF-8.
+	 * @exception IOException if the document is not valid JSON or a stream fails.
+	 */
+	public static void minify(@NotNull(message="in must not be null.") final InputStream in,
+	                          @NotNull(message="out must not be null.") final OutputStream out) throws IOException {
+	    reformat(in, out, false);
+	}
+
+	/**
+	 *  <code>reformat</code> method copies the JSON read from IN to OUT token by token,
+	 *  pretty printed or minified. Nothing is built in between, so memory use does not
+	 *  grow with the document; keys keep their order and numbers are copied digit for digit.
+	 *  Parsing is strict, as a default ObjectMapper's is. Neither stream is closed.
+	 *
+	 * @param in a JSON document; the encoding is detected.
+	 * @param out receives the document reformatted, in UTF-8.
+	 * @param pretty true to pretty print, false to minify.
+	 * @exception IOException if the document is not valid JSON or a stream fails.
+	 */
+	public static void reformat(@NotNull(message="in must not be null.") final InputStream in,
+	                            @NotNull(message="out must not be null.") final OutputStream out,
+	                            final boolean pretty) throws IOException {
+	    val factory = constructJackson().getFactory();
+	    try(final JsonParser parser = factory.createParser(in);
+	        final JsonGenerator generator = factory.createGenerator(out, JsonEncoding.UTF8)) {
+	        parser.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+	        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+	        copy(parser, generator, pretty);
+	    }
+	}
+
+	/**
+	 *  <code>reformat</code> method reformats a JSON document, see reformat(InputStream, OutputStream, boolean).
+	 *
+	 * @param jsonString a JSON document.
+	 * @param pretty true to pretty print, false to minify.
+	 * @return the document reformatted.
+	 * @exception IOException if the document is not valid JSON.
+	 */
+	public static String reformat(@NotNull(message="jsonString must not be null.") final String jsonString, final boolean pretty) throws IOException {
+	    val factory = constructJackson().getFactory();
+	    val writer = new StringWriter(jsonString.length() + (pretty ? jsonString.length() / 2 : 0));
+	    try(final JsonParser parser = factory.createParser(jsonString);
+	        final JsonGenerator generator = factory.createGenerator(writer)) {
+	        copy(parser, generator, pretty);
+	    }
+	    return writer.toString();
+	}
+
+	private static void copy(final JsonParser parser, final JsonGenerator generator, final boolean pretty) throws IOException {
+	    parser.disable(JsonParser.Feature.ALLOW_UNQUOTED_CONTROL_CHARS);
+	    parser.disable(JsonParser.Feature.ALLOW_BACKSLASH_ESCAPING_ANY_CHARACTER);
+	    if (pretty) { generator.setPrettyPrinter(new DefaultPrettyPrinter()); }
+
+	    for(JsonToken token = parser.nextToken(); token != null; token = parser.nextToken()) {
+	        if (token.isNumeric()) {
+	            generator.writeNumber(parser.getText()); // Verbatim; no round trip through double.
+	        } else {
+	            generator.copyCurrentEvent(parser);
+	        }
+	    }
 	}
 	
 	public static Map<String, Object> toMap(String json) throws IOException {
-	    val mapper = new ObjectMapper();
-	    return mapper.readValue(json, new TypeReference<HashMap<String, Object>>(){});
+	    return mapReader.readValue(json);
 	}
 	
 	public static Map<Object, Object> toObjectMap(String json) throws IOException {
-	    val mapper = new ObjectMapper();
-	    return mapper.readValue(json, new TypeReference<HashMap<Object, Object>>(){});
+	    return objectMapReader.readValue(json);
 	}
 	
 	/**
@@ -146,6 +318,12 @@ public class JSONUtils {
 	 * Will clone Object obj of class type 'c' by washing it through the JSON
 	 * serialization engine.
 	 *
+	 * The tokens are buffered in a TokenBuffer, never encoded to JSON text and parsed
+	 * back. The values are buffered as the parser would read them from the text, so
+	 * the result is that of fromJSON(toJSON(obj), c): an untyped 1L still comes back
+	 * an Integer, 0.1f a Double 0.1, a byte[] its base64 String and an @JsonRawValue
+	 * the structure its text stands for.
+	 *
 	 * @param <T> Type of the class object.
 	 * @param obj
 	 *            Any object
@@ -158,7 +336,92 @@ public class JSONUtils {
 	 *             Tossed if JSON marshalling fails.
 	 */
     public static <T> T clone(final Object obj, final Class<T> c) throws IOException {
-        return fromJSON(toJSON(obj), c);
+        final TokenBuffer buffer = new TextTokenBuffer();
+        mapper.writeValue(buffer, obj);
+        try(final JsonParser parser = buffer.asParser()) {
+            return mapper.readValue(parser, c);
+        }
+	}
+
+    // Values buffered as parsed from text: integral numbers as the smallest of int, long and
+    // BigInteger that holds them, a float as the double its text reads as, binary data as its
+    // base64 string and raw values as the tokens they are made of. TokenBuffer would otherwise
+    // keep them as they are, or embedded objects in the case of binary data and raw values.
+    private static final class TextTokenBuffer extends TokenBuffer {
+        TextTokenBuffer() {
+            super(mapper, false);
+        }
+
+        @Override
+        public void writeNumber(final short i) throws IOException {
+            super.writeNumber((int)i);
+        }
+
+        @Override
+        public void writeNumber(final long l) throws IOException {
+            if (l == (int)l) {
+                super.writeNumber((int)l);
+            } else {
+                super.writeNumber(l);
+            }
+        }
+
+        @Override
+        public void writeNumber(final float f) throws IOException {
+            super.writeNumber(Double.parseDouble(Float.toString(f)));
+        }
+
+        @Override
+        public void writeNumber(final BigInteger v) throws IOException {
+            if (v != null && v.bitLength() < 64) {
+                writeNumber(v.longValue());
+            } else {
+                super.writeNumber(v);
+            }
+        }
+
+        @Override
+        public void writeBinary(final Base64Variant variant, final byte[] data, final int offset, final int len) throws IOException {
+            writeString(variant.encode(Arrays.copyOfRange(data, offset, offset + len)));
+        }
+
+        @Override
+        public void writeRawValue(final String text) throws IOException {
+            try(final JsonParser parser = mapper.getFactory().createParser(text)) {
+                parser.nextToken();
+                copyCurrentStructure(parser);
+            }
+        }
+
+        @Override
+        public void writeRawValue(final String text, final int offset, final int len) throws IOException {
+            writeRawValue(text.substring(offset, offset + len));
+        }
+
+        @Override
+        public void writeRawValue(final char[] text, final int offset, final int len) throws IOException {
+            writeRawValue(new String(text, offset, len));
+        }
+    }
+
+	/**
+	 * Will deep copy obj. Plain beans, with a no argument constructor and no final fields,
+	 * are copied field by field by a plan compiled once per class; collections, maps, arrays
+	 * and dates are copied and immutable values shared. Anything else is cloned as clone does.
+	 *
+	 * Unlike clone every field is copied as is, nulls, @JsonIgnore'd and unmapped ones
+	 * included, and shared references and cycles within the graph are preserved.
+	 *
+	 * @param <T> Type of the object.
+	 * @param obj
+	 *            Any object; may be null.
+	 * @return a deep copy of obj.
+	 *
+	 * @throws IOException
+	 *             Tossed if a value that is no plain bean fails JSON marshalling.
+	 */
+    public static <T> T deepCopy(final T obj) throws IOException {
+        return BeanClonePlan.deepCopy(obj);
 	}
     
     /**
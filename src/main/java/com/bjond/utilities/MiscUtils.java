@@ -14,37 +14,37 @@
 
 package com.bjond.utilities;
 
-import javax.naming.InitialContext;
-import java.io.File;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.net.InetAddress;
-import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import java.util.UUID;
-import java.util.function.Function;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-import java.util.stream.Collectors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.Stream;
 
 import javax.validation.constraints.NotNull;
 
 import org.apache.commons.beanutils.BeanUtils;
 import org.apache.commons.lang3.StringUtils;
-import org.jooq.lambda.Unchecked;
 
 import com.fasterxml.uuid.EthernetAddress;
 import com.fasterxml.uuid.Generators;
 import com.fasterxml.uuid.impl.TimeBasedGenerator;
 import com.google.common.base.CaseFormat;
-import com.google.common.io.Files;
+import com.google.common.hash.Hashing;
 
 import lombok.val;
 import lombok.extern.slf4j.Slf4j;
@@ -62,20 +62,129 @@ import lombok.extern.slf4j.Slf4j;
 final public class MiscUtils {
     private final static long DELAY_IN_MILLIS = 3000;
 
-    private static TimeBasedGenerator uuidGenerator;
+    /**
+     * How {@link #generateUUID()} and its siblings generate UUIDs. The default, TIME_BASED,
+     * may be overridden with the BJOND_UUID_STRATEGY environment variable (case insensitive)
+     * or at runtime with {@link #setUUIDStrategy(UUIDStrategy)}. 
+     */
+    public enum UUIDStrategy {
+        /** Version 1 UUIDs from one shared JUG generator. Every thread synchronizes on it. */
+        TIME_BASED,
+        /** Version 1 UUIDs, same node, from lock free stripes of the JVM. Scales with cores. */
+        STRIPED_TIME_BASED,
+        /** Lock free version 7 style UUIDs: Unix milliseconds, counter and random bits. */
+        TIME_ORDERED
+    }
+
+    // Canonical and compact string lengths of a UUID.
+    private final static int UUID_LENGTH = 36;
+    private final static int COMPACT_UUID_LENGTH = 22;
+
+    // Lookup tables for the UUID codecs. Never modified.
+    private final static char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    private final static char[] BASE64URL_DIGITS = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_".toCharArray();
+    private final static int[] HEX_VALUES = new int[128];
+    private final static int[] BASE64URL_VALUES = new int[128];
+    // Which of the 32 nibbles each char of the canonical form holds; -1 for a dash.
+    private final static int[] UUID_NIBBLES = new int[UUID_LENGTH];
     static {
-        // need to pass Ethernet address; can either use real one (shown here)
-        final EthernetAddress nic = EthernetAddress.fromInterface();
-        // or bogus which would be gotten with: EthernetAddress.constructMulticastAddress()
-        uuidGenerator = Generators.timeBasedGenerator(nic);
-        // also: we don't specify synchronizer, getting an intra-JVM syncer; there is
-        // also external file-locking-based synchronizer if multiple JVMs run JUG
-        // UUID uuid = uuidGenerator.generate();
+        Arrays.fill(HEX_VALUES, -1);
+        for(int i = 0; i < 16; i++) {
+            HEX_VALUES[HEX_DIGITS[i]] = i;
+            HEX_VALUES[Character.toUpperCase(HEX_DIGITS[i])] = i;
+        }
+        Arrays.fill(BASE64URL_VALUES, -1);
+        for(int i = 0; i < BASE64URL_DIGITS.length; i++) {
+            BASE64URL_VALUES[BASE64URL_DIGITS[i]] = i;
+        }
+        for(int i = 0, nibble = 0; i < UUID_LENGTH; i++) {
+            UUID_NIBBLES[i] = (i == 8 || i == 13 || i == 18 || i == 23) ? -1 : nibble++;
+        }
     }
 
+    // Needs no node so it is not held back by the lazy holder below.
+    private final static TimeOrderedGenerator timeOrderedUUIDGenerator = new TimeOrderedGenerator();
+    private static volatile UUIDStrategy uuidStrategy;
+    static {
+        final UUIDStrategy configured = parseEnumCaseInsensitive(UUIDStrategy.class, System.getenv("BJOND_UUID_STRATEGY"));
+        uuidStrategy = (configured != null) ? configured : UUIDStrategy.TIME_BASED;
+    }
+
+    /**
+     * Lazy holder of the time based generators. Resolving the node may enumerate the
+     * network interfaces, which can take hundreds of milliseconds or worse in a container,
+     * so it is put off until the first time based UUID is asked for rather than paid by
+     * everybody who touches MiscUtils.
+     *
+     * The node comes from the BJOND_UUID_NODE system property or environment variable:
+     *   interface - the hardware address of a network interface (the default).
+     *   random    - a random multicast address. Never enumerates the interfaces.
+     *   hostname  - a multicast address hashed from the host name. Stable across restarts.
+     *   or an explicit address such as 02:00:5e:10:00:01.
+     */
+    private static final class TimeBasedUUIDGenerators {
+        private final static TimeBasedGenerator uuidGenerator;
+        private final static StripedTimeBasedGenerator stripedUUIDGenerator;
+        static {
+            // need to pass Ethernet address; can either use real one or bogus one, see resolveUUIDNode.
+            // also: we don't specify a timer, getting JUG's JVM wide one shared with every other
+            // JUG time based generator; there is also external file-locking-based synchronizer if
+            // multiple JVMs run JUG
+            // UUID uuid = uuidGenerator.generate();
+            uuidGenerator = Generators.timeBasedGenerator(resolveUUIDNode(System.getProperty("BJOND_UUID_NODE", System.getenv("BJOND_UUID_NODE"))));
 
-    // Regular expression to extract all numerics precompiled for performance. Thread safe.
-    private final static Pattern numericPattern = Pattern.compile("\\d+");
+            // The stripes steer clear of the shared timer's clock sequence, which every UUID it stamps carries.
+            stripedUUIDGenerator = new StripedTimeBasedGenerator(uuidGenerator.getEthernetAddress(), uuidGenerator.generate().clockSequence(),
+                                                                 Runtime.getRuntime().availableProcessors() * 2);
+        }
+    }
+
+    // Node of the time based UUIDs. A null return has JUG pick a random multicast address.
+    private static EthernetAddress resolveUUIDNode(final String source) {
+        if (isNullOrBlank(source) || "interface".equalsIgnoreCase(source.trim())) {
+            return EthernetAddress.fromInterface();
+        }
+        if ("random".equalsIgnoreCase(source.trim())) {
+            return EthernetAddress.constructMulticastAddress();
+        }
+        if ("hostname".equalsIgnoreCase(source.trim())) {
+            String host = System.getenv("HOSTNAME");
+            if (isNullOrBlank(host)) { host = System.getenv("COMPUTERNAME"); }
+            if (isNullOrBlank(host)) {
+                try {
+                    host = InetAddress.getLocalHost().getHostName();
+                } catch(final Exception e) {
+                    log.warn("Unable to resolve the host name for the UUID node, using a random one. {}", e.getMessage());
+                    return EthernetAddress.constructMulticastAddress();
+                }
+            }
+            // Only 6 bytes are needed; set the multicast bit so it can't clash with a real NIC (RFC 4122 4.5).
+            final byte[] node = Arrays.copyOf(Hashing.sha1().hashString(host, StandardCharsets.UTF_8).asBytes(), 6);
+            node[0] |= 0x01;
+            return EthernetAddress.valueOf(node);
+        }
+
+        try {
+            return EthernetAddress.valueOf(source.trim());
+        } catch(final NumberFormatException e) {
+            log.error("BJOND_UUID_NODE is neither interface, random, hostname nor an address: {}. Using the interface.", source);
+            return EthernetAddress.fromInterface();
+        }
+    }
+
+
+    // The normalized size of a numeric. 75 places
+    private final static int NORMALIZED = 75;
+
+    // Padding for numerics. Never modified.
+    private final static char[] NORMALIZED_ZEROS = StringUtils.repeat('0', NORMALIZED).toCharArray();
+
+    // Bulk normalization of at least this many strings is split across the common fork-join pool.
+    private final static int NATURAL_SORT_PARALLEL_THRESHOLD = 8192;
+
+    // Per thread scratch buffer for building natural sort keys. Replaced if a freakishly
+    // long string leaves it too large to keep around.
+    private final static ThreadLocal<StringBuilder> naturalSortScratch = ThreadLocal.withInitial(() -> new StringBuilder(500));
 
     /**
 	 * Given an original string this method will normalize all numerics held within
@@ -84,9 +193,8 @@ final public class MiscUtils {
      *  https://en.wikipedia.org/wiki/Natural_sort_order
      *
      *  Algorithm:
-     *  Our approach basically matches a precompiled regular expression against 
-     *  a string and extracs all numeric substrings. This is standard and fast 
-     *  regex concept that actually has a special match character: \d+
+     *  Our approach basically scans the string once and picks out every run of
+     *  digits, the same runs the regular expression \d+ would match. 
      *
      *  For each numeric normailze it and construct a new string with the normalized
      *  numeric in place of the original.
@@ -102,10 +210,12 @@ final public class MiscUtils {
 	 * 
      *  Implementation Notes:
      *  Emphasis on performance thus the code is a bit more complex than you would expect.
-     *  I could make it even more complex and more performant (theoretically) by reducing
-     *  temporary objects further but the resulting code would be exceedingly complex and 
-     *  error prone. A balancing of the two requirements of maintainability and performance
-     *  were considered.
+     *  The key is built in a per thread scratch buffer and the only object allocated
+     *  is the resulting String. To normalize many strings at once see
+     *  {@link #normalizeAllToNaturalSortOrder(String[], String[])} and its siblings.
+     *
+     *  If all you need is to sort in memory use {@link NaturalOrderComparator} instead. It
+     *  yields the same order without building any keys.
      * 
 	 * @param original
 	 * @return
@@ -114,55 +224,286 @@ final public class MiscUtils {
         // Guard
         if(StringUtils.isBlank(original)) { return "";}
 
-        // The normalized size of a numeric. 75 places
-        final int NORMALIZED = 75;
+        final StringBuilder sb = naturalSortScratch();
+        appendNaturalSortOrder(sb, original);
+        return sb.toString();
+    }
+
+    /**
+     * Normalizes every string in <code>in</code> to Natural Sort Order placing the
+     * result at the same index of <code>out</code>. Each result is identical to
+     * {@link #normalizeToNaturalSortOrder(String)}.
+     *
+     * Large arrays are split across the common fork-join pool; each worker reuses
+     * its own scratch buffer so the only objects allocated are the results.
+     *
+     * @param in the strings to normalize. May contain nulls.
+     * @param out receives the normalized strings. At least as long as <code>in</code>.
+     * @return out
+     */
+    public static String[] normalizeAllToNaturalSortOrder(@NotNull(message="in must not be null.") final String[] in,
+                                                          @NotNull(message="out must not be null.") final String[] out) {
+        if (out.length < in.length) {
+            throw new IllegalArgumentException("out is shorter than in (" + out.length + " < " + in.length + ")");
+        }
 
-        // Match on all numerics
-        final Matcher m = numericPattern.matcher(original);
+        if (in.length < NATURAL_SORT_PARALLEL_THRESHOLD) {
+            normalizeRangeToNaturalSortOrder(in, out, 0, in.length);
+        } else {
+            ForkJoinPool.commonPool().invoke(new NaturalSortTask(in, out, 0, in.length));
+        }
+        return out;
+    }
+
+    /**
+     * Normalizes every string in the collection to Natural Sort Order. 
+     * See {@link #normalizeAllToNaturalSortOrder(String[], String[])}
+     *
+     * @param originals the strings to normalize. May contain nulls.
+     * @return the normalized strings in iteration order of originals.
+     */
+    public static List<String> normalizeAllToNaturalSortOrder(@NotNull(message="originals must not be null.") final Collection<String> originals) {
+        final String[] in = originals.toArray(new String[originals.size()]);
+        return Arrays.asList(normalizeAllToNaturalSortOrder(in, new String[in.length]));
+    }
 
-        // Flip through all numerics, if any, and normalize
-        final StringBuilder sb = new StringBuilder(500);
+    /**
+     * Lazily normalizes every string of the stream to Natural Sort Order. Parallel
+     * streams run on the fork-join pool and each worker reuses its own scratch buffer.
+     *
+     * @param originals the strings to normalize. May contain nulls.
+     * @return stream of normalized strings.
+     */
+    public static Stream<String> normalizeAllToNaturalSortOrder(@NotNull(message="originals must not be null.") final Stream<String> originals) {
+        return originals.map(MiscUtils::normalizeToNaturalSortOrder);
+    }
+
+    private static void normalizeRangeToNaturalSortOrder(final String[] in, final String[] out, final int from, final int to) {
+        for (int i = from; i < to; i++) {
+            out[i] = normalizeToNaturalSortOrder(in[i]);
+        }
+    }
+
+    private static StringBuilder naturalSortScratch() {
+        StringBuilder sb = naturalSortScratch.get();
+        if (sb.capacity() > 64 * 1024) {
+            sb = new StringBuilder(500);
+            naturalSortScratch.set(sb);
+        }
+        sb.setLength(0);
+        return sb;
+    }
+
+    private static void appendNaturalSortOrder(final StringBuilder sb, final String original) {
+        final int length = original.length();
         int index = 0; // Current location in string.
-        while(m.find()) {
-            final String numeric = original.substring(m.start(), m.end());
+        while(index < length) {
+            final char c = original.charAt(index);
+            if(c < '0' || c > '9') {
+                sb.append(c);
+                index++;
+                continue;
+            }
 
-            // First insert any previous characters.
-            sb.append(original.substring(index, m.start()));
-            index = m.end();
+            final int start = index;
+            while(index < length && original.charAt(index) >= '0' && original.charAt(index) <= '9') { index++; }
 
-            final int zeros = NORMALIZED - numeric.length();
+            final int zeros = NORMALIZED - (index - start);
             if(zeros > 0){ // if length > NORMALIZED we blew the sort.
-                for(int i = 0; i < zeros; sb.append("0"), i++);
+                sb.append(NORMALIZED_ZEROS, 0, zeros);
             } else {
                 log.warn("Normalized numeric is greater than {} places. {}", NORMALIZED, original);
             }
-            sb.append(numeric);
+            sb.append(original, start, index);
+        }
+    }
+
+    // Splits bulk normalization in halves until small enough to do in place.
+    @SuppressWarnings("serial")
+    private static final class NaturalSortTask extends RecursiveAction {
+        private final String[] in;
+        private final String[] out;
+        private final int from;
+        private final int to;
+
+        NaturalSortTask(final String[] in, final String[] out, final int from, final int to) {
+            this.in = in;
+            this.out = out;
+            this.from = from;
+            this.to = to;
         }
 
-        // Append anything non-numeric for the remainder of the string
-        // if any.
-        if(index < original.length()) {
-            sb.append(original.substring(index));
+        @Override
+        protected void compute() {
+            if (to - from <= NATURAL_SORT_PARALLEL_THRESHOLD / 4) {
+                normalizeRangeToNaturalSortOrder(in, out, from, to);
+                return;
+            }
+            final int middle = (from + to) >>> 1;
+            invokeAll(new NaturalSortTask(in, out, from, middle), new NaturalSortTask(in, out, middle, to));
         }
-        
+    }
+
+    /**
+     * Given an original string this method will produce a compact key that sorts,
+     * character by character, in Natural Sort Order. It is a drop in replacement for
+     * {@link #normalizeToNaturalSortOrder(String)} where the key is persisted and indexed:
+     * both produce the same order but this one does not pad every numeric to 75 places.
+     *
+     *  Algorithm:
+     *  Every run of digits is stripped of leading zeros and written as a length prefix
+     *  followed by its significant digits. Non-numerics are copied as is.
+     *
+     *  The prefix is itself a digit so a numeric still sorts against the surrounding
+     *  characters exactly like the padded form does. 0 through 8 significant digits are
+     *  written as that single digit. Anything longer is written as '9' followed by
+     *  the length encoded the same way, recursively. A longer numeric therefore always
+     *  has the larger prefix and numerics of any length sort correctly.
+     *
+     *  Examples: "0" is "0", "007" is "17", "a12b" is "a212b" and "1234567890"
+     *  is "92101234567890".
+     *
+     *  Compact means against the legacy key, not the original: the key is one character
+     *  longer than the original per numeric, two or more for 9 significant digits and up,
+     *  less the leading zeros dropped. Text with numerics therefore usually gets a longer
+     *  key, "aa11bb22cc33ff" is "aa211bb222cc233ff", and text without any keeps its length.
+     *  The prefix can't be left out even for short numerics: without it "9" would sort
+     *  after "10".
+     *
+     *  Keys compare equal wherever the legacy keys compare equal ("a007" and "a7").
+     *  Compare keys with String.compareTo or any binary collation.
+     *
+     * @param original the string to encode.
+     * @return the compact key; "" for null or blank.
+     */
+    public static String normalizeToCompactNaturalSortOrder(final String original) {
+        // Guard
+        if(StringUtils.isBlank(original)) { return "";}
+
+        final int length = original.length();
+        final StringBuilder sb = naturalSortScratch();
+        int index = 0; // Current location in string.
+        while(index < length) {
+            final char c = original.charAt(index);
+            if(c < '0' || c > '9') {
+                sb.append(c);
+                index++;
+                continue;
+            }
+
+            // Skip leading zeros then find the end of the numeric.
+            while(index < length && original.charAt(index) == '0') { index++; }
+            final int start = index;
+            while(index < length && original.charAt(index) >= '0' && original.charAt(index) <= '9') { index++; }
+
+            appendCompactLength(sb, index - start);
+            sb.append(original, start, index);
+        }
+
         return sb.toString();
     }
 
+    /**
+     * Decodes a key produced by {@link #normalizeToCompactNaturalSortOrder(String)} back to
+     * the key {@link #normalizeToNaturalSortOrder(String)} produces for the same original.
+     * Use it to migrate a persisted column in either direction or to verify one against
+     * the other. Numerics that held 75 or more places can't be restored to the legacy key
+     * as the legacy key itself depends on their leading zeros; they are returned unpadded.
+     *
+     * @param key a compact key.
+     * @return the legacy, zero padded, key.
+     * @throws IllegalArgumentException if key is not a well formed compact key.
+     */
+    public static String decodeCompactNaturalSortOrder(final String key) {
+        // Guard
+        if(StringUtils.isBlank(key)) { return "";}
+
+        final int length = key.length();
+        final StringBuilder sb = new StringBuilder(length + NORMALIZED * 2);
+        final int[] cursor = {0};
+        while(cursor[0] < length) {
+            final char c = key.charAt(cursor[0]);
+            if(c < '0' || c > '9') {
+                sb.append(c);
+                cursor[0]++;
+                continue;
+            }
+
+            final int places = readCompactLength(key, cursor);
+            final int start = cursor[0];
+            if(start + places > length) {
+                throw new IllegalArgumentException("Truncated numeric at " + start + " in compact key: " + key);
+            }
+            for(int i = start; i < start + places; i++) {
+                final char digit = key.charAt(i);
+                if(digit < '0' || digit > '9' || (i == start && digit == '0')) {
+                    throw new IllegalArgumentException("Malformed numeric at " + start + " in compact key: " + key);
+                }
+            }
+            cursor[0] += places;
+            if(cursor[0] < length && key.charAt(cursor[0]) >= '0' && key.charAt(cursor[0]) <= '9') {
+                throw new IllegalArgumentException("Numeric overruns its length at " + start + " in compact key: " + key);
+            }
+
+            // Zero has no significant digits but still occupies all places.
+            sb.append(NORMALIZED_ZEROS, 0, Math.max(NORMALIZED - Math.max(places, 1), 0));
+            if(places == 0) {
+                sb.append('0');
+            } else {
+                sb.append(key, start, start + places);
+            }
+        }
+
+        return sb.toString();
+    }
+
+    // Length prefix of the compact natural sort key. See normalizeToCompactNaturalSortOrder.
+    private static void appendCompactLength(final StringBuilder sb, final int places) {
+        if(places < 9) {
+            sb.append((char)('0' + places));
+            return;
+        }
+
+        int digits = 1;
+        for(int n = places; n >= 10; n /= 10, digits++);
+        sb.append('9');
+        appendCompactLength(sb, digits);
+        sb.append(places);
+    }
+
+    private static int readCompactLength(final String key, final int[] cursor) {
+        if(cursor[0] >= key.length()) {
+            throw new IllegalArgumentException("Missing numeric length in compact key: " + key);
+        }
+
+        final char prefix = key.charAt(cursor[0]++);
+        if(prefix < '9') {
+            return prefix - '0';
+        }
+
+        final int digits = readCompactLength(key, cursor);
+        if(digits < 1 || digits > 9 || cursor[0] + digits > key.length()) {
+            throw new IllegalArgumentException("Malformed numeric length in compact key: " + key);
+        }
+        final int places = Integer.parseInt(key.substring(cursor[0], cursor[0] + digits));
+        cursor[0] += digits;
+        if(places < 9) {
+            throw new IllegalArgumentException("Malformed numeric length in compact key: " + key);
+        }
+        return places;
+    }
+
     /**
 	 * Given a JNDI path to the T resource this method will return 
      * a reference to the session bean or null if none found.
+     * java:global/ references are cached, see ServiceLocator.getDefault();
+     * c may be null, the result is then cast unchecked.
 	 * 
 	 * @param resource
 	 * @return
 	 */
-    @SuppressWarnings("unchecked")
     public static <T> T obtainService(final String resource, Class<T> c) {
-		try {
-            return (T) new InitialContext().lookup(resource);
-		}
-		catch(final Exception e) {
-            return null;
-		}
+        return (resource == null) ? null : ServiceLocator.getDefault().find(resource, c);
 	}
 
     
@@ -210,16 +551,298 @@ final public class MiscUtils {
      */
     public static String generateUUID() {
         //return UUID.randomUUID().toString();
-        return uuidGenerator.generate().toString();
+        final char[] chars = new char[UUID_LENGTH];
+        writeUUID(generateUUIDObject(), chars, 0);
+        return new String(chars);
     }
 
     public static UUID generateUUIDObject() {
         //return UUID.randomUUID().toString();
-        return uuidGenerator.generate();
+        switch(uuidStrategy) {
+        case STRIPED_TIME_BASED:
+            return TimeBasedUUIDGenerators.stripedUUIDGenerator.generate();
+        case TIME_ORDERED:
+            return timeOrderedUUIDGenerator.generate();
+        default:
+            return TimeBasedUUIDGenerators.uuidGenerator.generate();
+        }
+    }
+
+    /**
+     *  <code>generateUUIDs</code> method will generate n UUIDs at once. The lock free
+     *  strategies reserve a block of n timestamps in a single step; TIME_BASED
+     *  simply generates them one at a time.
+     *
+     * @param n number of UUIDs.
+     * @return a <code>List&lt;String&gt;</code> value
+     */
+    public static List<String> generateUUIDs(final int n) {
+        final UUID[] uuids = generateUUIDObjects(n);
+        final String[] strings = new String[n];
+        final char[] chars = new char[UUID_LENGTH];
+        for(int i = 0; i < n; i++) {
+            writeUUID(uuids[i], chars, 0);
+            strings[i] = new String(chars);
+        }
+        return Arrays.asList(strings);
+    }
+
+    public static UUID[] generateUUIDObjects(final int n) {
+        if (n < 0) throw new IllegalArgumentException("n must not be negative: " + n);
+
+        final UUID[] uuids = new UUID[n];
+        switch(uuidStrategy) {
+        case STRIPED_TIME_BASED:
+            return TimeBasedUUIDGenerators.stripedUUIDGenerator.generate(uuids);
+        case TIME_ORDERED:
+            return timeOrderedUUIDGenerator.generate(uuids);
+        default:
+            for(int i = 0; i < n; i++) {
+                uuids[i] = TimeBasedUUIDGenerators.uuidGenerator.generate();
+            }
+            return uuids;
+        }
+    }
+
+    /**
+     * The node, usually a hardware address, of the time based UUIDs. See
+     * BJOND_UUID_NODE. Calling this resolves the node if it has not been already.
+     *
+     * @return the node.
+     */
+    public static EthernetAddress getUUIDNode() {
+        return TimeBasedUUIDGenerators.uuidGenerator.getEthernetAddress();
+    }
+
+    public static UUIDStrategy getUUIDStrategy() {
+        return uuidStrategy;
+    }
+
+    /**
+     * Switches how UUIDs are generated from here on. Every strategy may be mixed
+     * freely with the others within the JVM without risking a duplicate.
+     *
+     * @param strategy the new strategy.
+     */
+    public static void setUUIDStrategy(@NotNull(message="strategy must not be null.") final UUIDStrategy strategy) {
+        if (strategy == null) throw new IllegalArgumentException("strategy must not be null.");
+        uuidStrategy = strategy;
     }
 
     public static UUID generateUUIDObject(final String uuid) {
-        return UUID.fromString(uuid);
+        // Canonical form takes the fast path; anything else UUID.fromString still accepts.
+        final UUID canonical = parseCanonicalUUID(uuid);
+        return (canonical != null) ? canonical : UUID.fromString(uuid);
+    }
+
+    /**
+     *  <code>appendUUID</code> method appends the canonical 36 character form of uuid,
+     *  identical to <code>UUID.toString()</code>, without any temporary objects.
+     *
+     * @param sb destination
+     * @param uuid the UUID
+     * @return sb
+     */
+    public static StringBuilder appendUUID(final StringBuilder sb, final UUID uuid) {
+        final long msb = uuid.getMostSignificantBits();
+        final long lsb = uuid.getLeastSignificantBits();
+        for(int i = 0; i < UUID_LENGTH; i++) {
+            sb.append(uuidChar(msb, lsb, i));
+        }
+        return sb;
+    }
+
+    /**
+     * Writes the canonical 36 character form of uuid into dst at offset.
+     *
+     * @param uuid the UUID
+     * @param dst destination; needs 36 chars from offset.
+     * @param offset where to start writing.
+     * @return offset just past the last char written.
+     */
+    public static int writeUUID(final UUID uuid, final char[] dst, final int offset) {
+        final long msb = uuid.getMostSignificantBits();
+        final long lsb = uuid.getLeastSignificantBits();
+        for(int i = 0; i < UUID_LENGTH; i++) {
+            dst[offset + i] = uuidChar(msb, lsb, i);
+        }
+        return offset + UUID_LENGTH;
+    }
+
+    /**
+     * Writes the canonical 36 character form of uuid into dst at offset as ASCII,
+     * which is also UTF-8.
+     *
+     * @param uuid the UUID
+     * @param dst destination; needs 36 bytes from offset.
+     * @param offset where to start writing.
+     * @return offset just past the last byte written.
+     */
+    public static int writeUUID(final UUID uuid, final byte[] dst, final int offset) {
+        final long msb = uuid.getMostSignificantBits();
+        final long lsb = uuid.getLeastSignificantBits();
+        for(int i = 0; i < UUID_LENGTH; i++) {
+            dst[offset + i] = (byte)uuidChar(msb, lsb, i);
+        }
+        return offset + UUID_LENGTH;
+    }
+
+    /**
+     * Parses the canonical 36 character form of a UUID, hex digits of either case.
+     * Unlike <code>UUID.fromString</code> nothing is split and nothing but the UUID is allocated.
+     *
+     * @param s the UUID string.
+     * @return the UUID
+     * @throws IllegalArgumentException if s is not a canonical UUID.
+     */
+    public static UUID parseUUID(final CharSequence s) {
+        final UUID uuid = parseCanonicalUUID(s);
+        if (uuid == null) {
+            throw new IllegalArgumentException("Invalid UUID string: " + s);
+        }
+        return uuid;
+    }
+
+    // parseUUID without the exception: null if s is not canonical.
+    private static UUID parseCanonicalUUID(final CharSequence s) {
+        if (s == null || s.length() != UUID_LENGTH) {
+            return null;
+        }
+
+        long msb = 0;
+        long lsb = 0;
+        for(int i = 0; i < UUID_LENGTH; i++) {
+            final char c = s.charAt(i);
+            if (i == 8 || i == 13 || i == 18 || i == 23) {
+                if (c != '-') { return null; }
+                continue;
+            }
+            final int nibble = (c < 128) ? HEX_VALUES[c] : -1;
+            if (nibble < 0) { return null; }
+            if (i < 18) {
+                msb = (msb << 4) | nibble;
+            } else {
+                lsb = (lsb << 4) | nibble;
+            }
+        }
+        return new UUID(msb, lsb);
+    }
+
+    /**
+     * Parses the canonical 36 character form of a UUID held as ASCII in src at offset.
+     *
+     * @param src the bytes
+     * @param offset where the UUID starts.
+     * @return the UUID
+     * @throws IllegalArgumentException if the bytes are not a canonical UUID.
+     */
+    public static UUID parseUUID(final byte[] src, final int offset) {
+        if (offset < 0 || src.length - offset < UUID_LENGTH) {
+            throw new IllegalArgumentException("Fewer than " + UUID_LENGTH + " bytes for a UUID at " + offset);
+        }
+
+        long msb = 0;
+        long lsb = 0;
+        for(int i = 0; i < UUID_LENGTH; i++) {
+            final byte b = src[offset + i];
+            if (i == 8 || i == 13 || i == 18 || i == 23) {
+                if (b != '-') { throw new IllegalArgumentException("Invalid UUID at " + offset); }
+                continue;
+            }
+            final int nibble = (b >= 0) ? HEX_VALUES[b] : -1;
+            if (nibble < 0) { throw new IllegalArgumentException("Invalid UUID at " + offset); }
+            if (i < 18) {
+                msb = (msb << 4) | nibble;
+            } else {
+                lsb = (lsb << 4) | nibble;
+            }
+        }
+        return new UUID(msb, lsb);
+    }
+
+    /**
+     *  <code>toCompactUUID</code> method returns the 22 character URL safe base64 form
+     *  of uuid: its 16 bytes, big endian, encoded as by
+     *  <code>Base64.getUrlEncoder().withoutPadding()</code>. Safe in URLs, JSON and file names
+     *  but, unlike the canonical form, it does not sort in UUID order.
+     *
+     * @param uuid the UUID
+     * @return a <code>String</code> value
+     */
+    public static String toCompactUUID(final UUID uuid) {
+        final char[] chars = new char[COMPACT_UUID_LENGTH];
+        final long msb = uuid.getMostSignificantBits();
+        final long lsb = uuid.getLeastSignificantBits();
+        for(int i = 0; i < COMPACT_UUID_LENGTH; i++) {
+            chars[i] = BASE64URL_DIGITS[sextet(msb, lsb, i)];
+        }
+        return new String(chars);
+    }
+
+    public static StringBuilder appendCompactUUID(final StringBuilder sb, final UUID uuid) {
+        final long msb = uuid.getMostSignificantBits();
+        final long lsb = uuid.getLeastSignificantBits();
+        for(int i = 0; i < COMPACT_UUID_LENGTH; i++) {
+            sb.append(BASE64URL_DIGITS[sextet(msb, lsb, i)]);
+        }
+        return sb;
+    }
+
+    /**
+     * Parses the 22 character form produced by {@link #toCompactUUID(UUID)}.
+     *
+     * @param s the compact UUID.
+     * @return the UUID
+     * @throws IllegalArgumentException if s is not a compact UUID.
+     */
+    public static UUID parseCompactUUID(final CharSequence s) {
+        if (s == null || s.length() != COMPACT_UUID_LENGTH) {
+            throw new IllegalArgumentException("Invalid compact UUID: " + s);
+        }
+
+        long msb = 0;
+        long lsb = 0;
+        for(int i = 0; i < COMPACT_UUID_LENGTH; i++) {
+            final char c = s.charAt(i);
+            final long sextet = (c < 128) ? BASE64URL_VALUES[c] : -1;
+            if (sextet < 0) { throw new IllegalArgumentException("Invalid compact UUID: " + s); }
+
+            // 21 whole sextets hold 126 bits; the last one carries the final 2 in its top bits.
+            final int bit = i * 6;
+            if (bit + 6 <= 64) {
+                msb |= sextet << (58 - bit);
+            } else if (bit < 64) {
+                msb |= sextet >>> (bit + 6 - 64);
+                lsb |= sextet << (128 - bit - 6);
+            } else if (bit + 6 <= 128) {
+                lsb |= sextet << (122 - bit);
+            } else {
+                if ((sextet & 0x0F) != 0) { throw new IllegalArgumentException("Invalid compact UUID: " + s); }
+                lsb |= sextet >>> 4;
+            }
+        }
+        return new UUID(msb, lsb);
+    }
+
+    // The i-th char of the canonical form.
+    private static char uuidChar(final long msb, final long lsb, final int i) {
+        final int nibble = UUID_NIBBLES[i];
+        if (nibble < 0) { return '-'; }
+        return HEX_DIGITS[(int)(((nibble < 16) ? msb >>> ((15 - nibble) << 2) : lsb >>> ((31 - nibble) << 2)) & 0x0F)];
+    }
+
+    // The i-th 6 bits of the 128 bits of msb followed by lsb, zero filled past the end.
+    private static int sextet(final long msb, final long lsb, final int i) {
+        final int bit = i * 6;
+        if (bit + 6 <= 64) {
+            return (int)(msb >>> (58 - bit)) & 0x3F;
+        } else if (bit < 64) {
+            return (int)((msb << (bit + 6 - 64)) | (lsb >>> (128 - bit - 6))) & 0x3F;
+        } else if (bit + 6 <= 128) {
+            return (int)(lsb >>> (122 - bit)) & 0x3F;
+        } else {
+            return (int)(lsb << 4) & 0x3F;
+        }
     }
     
     /**
@@ -268,11 +891,13 @@ final public class MiscUtils {
      * As much as we can, we want our development environment to be identical to
      * production environment.  So it's best to avoid implementing development time
      * specific code.
+     *
+     * Read once, see RuntimeEnvironment.
      *  
      * @return true if running in production runtime mode; false otherwise.
      */
     public static boolean isProductionMode() {
-    	return isProductionMode(System.getenv());
+    	return RuntimeEnvironment.get().isProductionMode();
     }
 
     /**
@@ -301,7 +926,7 @@ final public class MiscUtils {
     }
     
     public static String getOpenshiftAppName() {
-    	return getOpenshiftAppName(System.getenv());
+    	return RuntimeEnvironment.get().getOpenshiftAppName();
     }
     
     public static String getOpenshiftAppName(Map<String, String> env) {
@@ -314,15 +939,18 @@ final public class MiscUtils {
      *  running beneath the Arquillian System testing framework. Some system components don't
      *  work in some configurations, for various reasons, with Arquillian thus we need to know.
      *
+     *  Read once, see RuntimeEnvironment.refresh() should the property be set later.
+     *
      * @return a <code>boolean</code> value TRUE if system is running under Arquillian integration test framework.
      */
     
     public static boolean isRunningUnderArquillian() {
-        return System.getProperty("ARQUILLIAN") != null;
+        return RuntimeEnvironment.get().isRunningUnderArquillian();
     }
     
 	/**
 	 * The file resource must be encoded in UTF-8.   
+	 * Works for resources inside jars as well. The contents are cached, see ResourceLoader.
 	 * 
 	 * @param myClass Class associated with the resource (resource just have to in the same package as this class, I think).
 	 * @param resourceName filename of the resource.
@@ -330,27 +958,19 @@ final public class MiscUtils {
 	 * @throws IOException If any IO error occurs reading contents from Resource. Such as the resource not found.
 	 */
 	public static String readContentsFromResource(@SuppressWarnings("rawtypes") Class myClass, String resourceName) throws IOException {
-		val rsc = myClass.getResource(resourceName);
-		val path = rsc.getPath();
-		val file = new File(path);
-		return Files.toString(file, Charset.forName("UTF-8"));
+		return ResourceLoader.readString(myClass, resourceName);
 	}
 	
  
 	/**
 	 * Get a MessageDigest based on the algorithm passed.
+	 * A new instance, cloned without a provider lookup. To hash without
+	 * allocating one at all see Digests.
 	 * 
 	 * @return the MessageDigest that conforms to MD5 hash.
 	 */
 	public static MessageDigest getMD5() {
-    	MessageDigest digest = null;
-    	try{
-    		digest = MessageDigest.getInstance("MD5");
-    	}
-    	catch(NoSuchAlgorithmException e) {
-    		log.error("", e);
-    	}
-    	return digest;
+    	return Digests.Algorithm.MD5.newInstance();
     }
 	
 	/**
@@ -365,8 +985,9 @@ final public class MiscUtils {
 	public static Object extend(final Object o1, final Object o2) throws Exception {
 		
 		if (o2 != null) { 
-			val o2Properties = getNonNullProperties(o2);
-			BeanUtils.populate(o1, o2Properties);
+			// Getter to setter transfers precompiled per class pair. Values that don't
+			// fit the setter go through BeanUtils for conversion as they always have.
+			BeanCopyPlan.of(o2.getClass(), o1.getClass()).copyNonNull(o2, o1);
 		}
 		
 		return o1;
@@ -383,8 +1004,11 @@ final public class MiscUtils {
 	 */
 	public static Object extend(Object o1, Object ... objs) throws Exception {
 		
+		// One pass per source, straight onto o1; no intermediate maps.
 		for (Object o : objs) {
-			o1 = extend(o1, o);
+			if (o != null) {
+				BeanCopyPlan.of(o.getClass(), o1.getClass()).copyNonNull(o, o1);
+			}
 		}
 		
 		return o1;
@@ -398,9 +1022,11 @@ final public class MiscUtils {
 	 * @throws Exception on introspection errors.
 	 */
 	public static Set<String> getNullProperties(final Object o) throws Exception {
-        return getProperties(o).stream()
-            .filter(Unchecked.predicate(k -> getPropertyValue(o, k) == null))
-            .collect(Collectors.toSet());
+		final Set<String> nulls = new HashSet<>();
+		for (val p : BeanProperties.of(o.getClass()).readable) {
+			if (p.get(o) == null) { nulls.add(p.name); }
+		}
+		return nulls;
 	}
 	
 	/**
@@ -411,9 +1037,13 @@ final public class MiscUtils {
 	 * @throws Exception on introspection errors.
 	 */
 	public static Map<String, Object> getNonNullProperties(final Object o) throws Exception {
-        return getProperties(o).stream()
-            .filter(Unchecked.predicate(k -> getPropertyValue(o, k) != null))
-            .collect(Collectors.toMap(Function.identity(), Unchecked.function(k-> getPropertyValue(o,k))));
+		val properties = BeanProperties.of(o.getClass()).readable;
+		final Map<String, Object> nonNulls = new HashMap<>(properties.length * 2);
+		for (val p : properties) {
+			val v = p.get(o);
+			if (v != null) { nonNulls.put(p.name, v); }
+		}
+		return nonNulls;
 	}
 
     /**
@@ -421,32 +1051,91 @@ final public class MiscUtils {
      *    * http://stackoverflow.com/questions/2808535/round-a-double-to-2-decimal-places 
 	 * 
 	 * 
+	 *
+	 * The result is always exactly that of
+	 * new BigDecimal(value).setScale(places, HALF_UP).doubleValue(), so it is the exact
+	 * binary value that is rounded: 2.675 is really 2.67499999... and rounds to 2.67.
+	 * For up to 8 places that is worked out with a power of ten scaling, no BigDecimal
+	 * is allocated. Only values too close to a midpoint to be decided from the scaled
+	 * double, exact ties included, and very large values go the BigDecimal route.
+	 *
 	 * @param value value to round.
 	 * @param places places
-	 * @return the rounded double. 
+	 * @return the rounded double.
 	 */
     public static double round(final double value, final int places) {
         if (places < 0) throw new IllegalArgumentException();
+        if (places >= POWERS_OF_TEN.length) return roundExactly(value, places);
+
+        return round(value, places, POWERS_OF_TEN[places]);
+    }
+
+    /**
+     * Bulk round(double, int): out[i] = round(in[i], places).
+     *
+     * @param in values to round.
+     * @param out receives the rounded values; at least as long as in. May be in itself.
+     * @param places places
+     */
+    public static void round(@NotNull(message="in must not be null.") final double[] in,
+                             @NotNull(message="out must not be null.") final double[] out,
+                             final int places) {
+        if (places < 0) throw new IllegalArgumentException();
+        if (out.length < in.length) throw new IllegalArgumentException("out is shorter than in.");
 
+        if (places >= POWERS_OF_TEN.length) {
+            for(int i = 0; i < in.length; i++) { out[i] = roundExactly(in[i], places); }
+            return;
+        }
+
+        final double scale = POWERS_OF_TEN[places];
+        for(int i = 0; i < in.length; i++) { out[i] = round(in[i], places, scale); }
+    }
+
+    // Every one exactly representable, so scaling by it is a single rounding.
+    private final static double[] POWERS_OF_TEN = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8};
+
+    // Scaled magnitudes at or above this go to BigDecimal. Well below 2^52 so the
+    // fraction of the scaled value still carries plenty of bits.
+    private final static double FAST_ROUND_LIMIT = 0x1p40;
+
+    private static double round(final double value, final int places, final double scale) {
+        final double scaled = Math.abs(value) * scale;
+        if (!(scaled < FAST_ROUND_LIMIT)) return roundExactly(value, places); // NaN and infinities too.
+
+        final double floor = Math.floor(scaled);
+        final double fraction = scaled - floor; // Exact, floor and scaled are within a factor of two.
+
+        // The product is off from the exact one by at most half an ulp. Closer to the
+        // midpoint than that and the side the exact value lies on is unknown.
+        if (Math.abs(fraction - 0.5) <= Math.ulp(scaled)) return roundExactly(value, places);
+
+        // Both operands exact, so the quotient is the correctly rounded double of the
+        // decimal, just as BigDecimal.doubleValue() gives.
+        final double magnitude = (fraction > 0.5 ? floor + 1 : floor) / scale;
+        return magnitude == 0 ? 0.0 : Math.copySign(magnitude, value); // BigDecimal has no -0.0
+    }
+
+    private static double roundExactly(final double value, final int places) {
         BigDecimal bd = new BigDecimal(value);
         bd = bd.setScale(places, RoundingMode.HALF_UP);
         return bd.doubleValue();
     }
 	
 	static Set<String> getProperties(Object o) throws Exception {
-		val props = BeanUtils.describe(o);
-		props.remove("class");
-		return props.keySet();
+		final Set<String> names = new HashSet<>();
+		for (val p : BeanProperties.of(o.getClass()).readable) {
+			names.add(p.name);
+		}
+		return names;
 	}
 	
 	static Object getPropertyValue(Object o, String propertyName) throws Exception {
-		val methodName = getMethodName(propertyName);
-		
-		val klass = o.getClass();
-		
-		val method = klass.getMethod(methodName);
-		val v = method.invoke(o);
-		return v;
+		val p = BeanProperties.of(o.getClass()).get(propertyName);
+		if (p == null || !p.isReadable()) {
+			throw new NoSuchMethodException(o.getClass().getName() + "." + getMethodName(propertyName) + "()");
+		}
+		return p.get(o);
 	}
 	
 	static String getMethodName(String propertyName) {
@@ -455,7 +1144,8 @@ final public class MiscUtils {
 
 	/**
 	 * Encapsulates value in double quotes "value". 
-     * Useful for cypher properties.
+     * Useful for cypher properties. Nothing within value is escaped; for that
+     * see Escaper.CYPHER.quote.
 	 *
 	 * @param value the value to quote.
 	 * @return escaped String
@@ -466,13 +1156,16 @@ final public class MiscUtils {
 
 	/**
 	 * Will escape every single and double quote within string s 
-     * such that the string is Drools compatable
+     * such that the string is Drools compatable. Done in a single pass,
+     * s itself is returned if it has no quotes at all. To escape straight
+     * into a StringBuilder or Appendable use Escaper.DROOLS.
 	 *
 	 * @param s the string to escape.
 	 * @return the escaped string
+	 * @throws NullPointerException if s is null, as it always has.
 	 */
-    static public String escapeSingleAndDoubleQuotes(final String s) {
-        return s.replace("\"", "\\\"").replace("'", "\\'");
+    static public String escapeSingleAndDoubleQuotes(@NotNull(message="s must not be null.") final String s) {
+        return Escaper.DROOLS.escape(Objects.requireNonNull(s, "s must not be null."));
     }
     
     /**
@@ -484,30 +1177,18 @@ final public class MiscUtils {
      * localhost.
      * 
      * If everything fails, just assume we're running on localhost.
+     *
+     * Resolved once, the server address in the background with a timeout; see RuntimeEnvironment.
      * 
      * @return The hostname.
      */
     static public String getHostString() {
-    	String host = "http://localhost:8080";
-    	if(System.getenv("OPENSHIFT_PUBLIC_URL") != null) {
-    		host = System.getenv("OPENSHIFT_PUBLIC_URL");
-    	}
-    	else if(System.getenv("OPENSHIFT_APP_DNS") != null) {
-    		host = "http://" + System.getenv("OPENSHIFT_APP_DNS");
-    	}
-    	else {
-    		try {
-    			InetAddress local = InetAddress.getLocalHost();
-    			host = "http://" + local.getHostAddress() + ":8080";
-    		}
-    		catch(Exception ex) {
-    			log.error(ex.getMessage());
-    		}
-    	}
-    	return host;
+    	return RuntimeEnvironment.get().getHostString();
     }
     
     // Courtesy of http://stackoverflow.com/questions/714108/cartesian-product-of-arbitrary-sets-in-java
+    // Builds every combination up front and merges combinations holding equal elements.
+    // Prefer lazyCartesianProduct for anything but small sets.
     @SuppressWarnings({"unchecked"})
     public static <T> Set<Set<T>> cartesianProduct(Set<T>... sets) {
         if (sets.length < 2) {
@@ -517,6 +1198,28 @@ final public class MiscUtils {
         return _cartesianProduct(0, sets);
     }
     
+    /**
+     *  <code>lazyCartesianProduct</code> method returns the Cartesian product of the 
+     *  collections without building it. Combinations are ordered Lists, generated one at
+     *  a time as iterated or streamed, and the product can be split for parallel streams.
+     *  See {@link CartesianProduct}.
+     *
+     * @param <T> Type of the elements.
+     * @param factors the collections, in order.
+     * @return a <code>CartesianProduct&lt;T&gt;</code> value
+     */
+    @SafeVarargs
+    public static <T> CartesianProduct<T> lazyCartesianProduct(final Collection<? extends T>... factors) {
+        // Copied element by element; handing the array on would let it escape.
+        final List<Collection<? extends T>> list = new ArrayList<>(factors.length);
+        for(final Collection<? extends T> factor : factors) { list.add(factor); }
+        return new CartesianProduct<T>(list);
+    }
+
+    public static <T> CartesianProduct<T> lazyCartesianProduct(final List<? extends Collection<? extends T>> factors) {
+        return new CartesianProduct<T>(factors);
+    }
+    
     public static <T> void printSetOfSet(PrintStream ps, Set<Set<T>> sos) {
         
         for (Set<T> s : sos) {
@@ -535,15 +1238,31 @@ final public class MiscUtils {
         }
     }
     
+    /**
+     *  <code>parseEnumCaseInsensitive</code> method returns the constant of enumType named s,
+     *  ignoring case, or null if there is none. Constant time; see {@link EnumLookup}.
+     *
+     * @param <T> Type of the enum.
+     * @param enumType the enum class.
+     * @param s the name. May be null.
+     * @return the constant or null.
+     */
     public static <T extends Enum<T>> T parseEnumCaseInsensitive(Class<T> enumType, String s) {
-        if (s == null)
-            return null;
+        return EnumLookup.of(enumType).get(s);
+    }
 
-        for (val v : enumType.getEnumConstants()) {
-            if (v.name().compareToIgnoreCase(s) == 0)
-                return v;
-        }
-        return null;
+    /**
+     * As {@link #parseEnumCaseInsensitive(Class, String)} but when aliases is true the
+     * names given by @JsonProperty on the constants are accepted as well.
+     *
+     * @param <T> Type of the enum.
+     * @param enumType the enum class.
+     * @param s the name or alias. May be null.
+     * @param aliases true to accept @JsonProperty names.
+     * @return the constant or null.
+     */
+    public static <T extends Enum<T>> T parseEnumCaseInsensitive(Class<T> enumType, String s, boolean aliases) {
+        return aliases ? EnumLookup.of(enumType).getWithAliases(s) : EnumLookup.of(enumType).get(s);
     }
 
     @SuppressWarnings({"unchecked"})
@@ -0,0 +1,141 @@
+/*  Copyright (c) 2016
+ *  by Bjönd, Inc., Boston, MA
+ *
+ *  This software is furnished under a license and may be used only in
+ *  accordance with the terms of such license.  This software may not be
+ *  provided or otherwise made available to any other party.  No title to
+ *  nor ownership of the software is hereby transferred.
+ *
+ *  This software is the intellectual property of Bjönd, Inc.,
+ *  and is protected by the copyright laws of the United States of America.
+ *  All rights reserved internationally.
+ *
+ */
+
+package com.bjond.utilities;
+
+import java.io.Serializable;
+import java.util.Comparator;
+import java.util.function.Function;
+
+import javax.validation.constraints.NotNull;
+
+
+/** <p> Natural Sort Order comparator that compares in place. </p>
+ *
+ *  https://en.wikipedia.org/wiki/Natural_sort_order
+ *
+ *  Yields the same order as comparing the keys produced by
+ *  {@link MiscUtils#normalizeToNaturalSortOrder(String)} but without
+ *  building them: no regex, no substrings, no allocation per compare.
+ *
+ *  Algorithm:
+ *  Both sequences are walked in lock step. Non-numeric characters are compared
+ *  as is. When both sides sit on a run of digits the runs are compared as
+ *  numbers: leading zeros are skipped, the longer significant run is the larger
+ *  number and equal lengths are compared digit by digit. Numbers that compare equal
+ *  ("007" and "7") are equal, exactly as they are once padded by the normalizer.
+ *
+ *  Null and blank values are equal to each other and sort first, again matching
+ *  the normalizer which maps both to "".
+ *
+ *  The only intended difference: numerics longer than 75 places are ordered correctly
+ *  here whereas the normalizer can only emit a warning and produce a bad order.
+ *
+ * <a href="mailto:Stephen.Agneta@bjondinc.com">Steve 'Crash' Agneta</a>
+ *
+ */
+
+final public class NaturalOrderComparator implements Comparator<CharSequence>, Serializable {
+    private static final long serialVersionUID = 2601725961412542431L;
+
+    /** Shared, stateless and thread safe. */
+    public final static NaturalOrderComparator INSTANCE = new NaturalOrderComparator();
+
+    private NaturalOrderComparator() {}
+
+    /**
+     *  <code>comparing</code> method returns a comparator that orders T by the natural
+     *  sort order of the key extracted from it.
+     *
+     *  example usage:
+     *      users.sort(NaturalOrderComparator.comparing(User::getName));
+     *
+     * @param <T> Type of the object compared.
+     * @param keyExtractor extracts the sortable key from T. May return null.
+     * @return a <code>Comparator&lt;T&gt;</code> value
+     */
+    public static <T> Comparator<T> comparing(@NotNull(message="keyExtractor must not be null.") final Function<? super T, ? extends CharSequence> keyExtractor) {
+        return (a, b) -> INSTANCE.compare(keyExtractor.apply(a), keyExtractor.apply(b));
+    }
+
+    @Override
+    public int compare(final CharSequence a, final CharSequence b) {
+        // Blank strings normalize to "" so they all compare equal and first.
+        final int lengthA = isBlank(a) ? 0 : a.length();
+        final int lengthB = isBlank(b) ? 0 : b.length();
+
+        int i = 0; // Current location in a
+        int j = 0; // Current location in b
+        while(i < lengthA && j < lengthB) {
+            final char ca = a.charAt(i);
+            final char cb = b.charAt(j);
+
+            if(isDigit(ca) && isDigit(cb)) {
+                // Skip leading zeros; they vanish in the padded form.
+                int startA = i;
+                while(startA < lengthA && a.charAt(startA) == '0') { startA++; }
+                int startB = j;
+                while(startB < lengthB && b.charAt(startB) == '0') { startB++; }
+
+                int endA = startA;
+                while(endA < lengthA && isDigit(a.charAt(endA))) { endA++; }
+                int endB = startB;
+                while(endB < lengthB && isDigit(b.charAt(endB))) { endB++; }
+
+                // More significant digits is a larger number.
+                final int significantA = endA - startA;
+                final int significantB = endB - startB;
+                if(significantA != significantB) {
+                    return significantA - significantB;
+                }
+
+                // Same magnitude, first differing digit decides.
+                for(int k = 0; k < significantA; k++) {
+                    final int diff = a.charAt(startA + k) - b.charAt(startB + k);
+                    if(diff != 0) { return diff; }
+                }
+
+                i = endA;
+                j = endB;
+            } else {
+                // A digit against a non-digit compares the same whether or not the run is
+                // padded as every digit, '0' included, lies on the same side of the non-digit.
+                if(ca != cb) { return ca - cb; }
+                i++;
+                j++;
+            }
+        }
+
+        // Whoever has something left is greater.
+        return (lengthA - i) > 0 ? 1 : (lengthB - j) > 0 ? -1 : 0;
+    }
+
+    private static boolean isDigit(final char c) {
+        // Same set as the \d character class used by the normalizer.
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isBlank(final CharSequence cs) {
+        if(cs == null) { return true; }
+        for(int i = 0; i < cs.length(); i++) {
+            if(!Character.isWhitespace(cs.charAt(i))) { return false; }
+        }
+        return true;
+    }
+
+    // Keep the singleton a singleton.
+    private Object readResolve() {
+        return INSTANCE;
+    }
+}
@@ -0,0 +1,256 @@
+/*  Copyright (c) 2016
+ *  by Bjönd, Inc., Boston, MA
+ *
+ *  This software is furnished under a license and may be used only in
+ *  accordance with the terms of such license.  This software may not be
+ *  provided or otherwise made available to any other party.  No title to
+ *  nor ownership of the software is hereby transferred.
+ *
+ *  This software is the intellectual property of Bjönd, Inc.,
+ *  and is protected by the copyright laws of the United States of America.
+ *  All rights reserved internationally.
+ *
+ */
+
+package com.bjond.utilities;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutionException;
+
+import javax.validation.constraints.NotNull;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import lombok.RequiredArgsConstructor;
+
+
+/** <p> Cached loading of classpath resources. </p>
+ *
+ *  A resource is located with Class.getResource, so names resolve relative to
+ *  the class's package unless they start with '/', and read through its URL:
+ *  a jar entry, a JBoss VFS file or a plain file all work. File system
+ *  resources of a megabyte or more are mapped rather than read onto the heap.
+ *
+ *  Contents are cached, immutable, in a cache bounded by their total size; the
+ *  least recently used go first. The UTF-8 decoding is cached with them and
+ *  counted at its largest, two bytes a char and a char a byte, from the start.
+ *  The anchor classes are held weakly so a redeployed application's class
+ *  loader is not kept alive by the cache; entries of collected classes are
+ *  dropped as they are noticed.
+ *
+ *  Outside of production mode file system resources are checked against their
+ *  modification time and size on every access, so an edited template is picked
+ *  up without a restart. setCheckModified overrides that.
+ *
+ * <a href="mailto:Stephen.Agneta@bjondinc.com">Steve 'Crash' Agneta</a>
+ *
+ */
+
+final public class ResourceLoader {
+    // Upper bound on the bytes held by the cache.
+    private final static long MAX_CACHED_BYTES = 32 * 1024 * 1024;
+    // Files at least this large are mapped rather than read.
+    private final static long MAP_THRESHOLD = 1024 * 1024;
+
+    private final static Cache<Key, Content> cache = CacheBuilder.newBuilder()
+        .maximumWeight(MAX_CACHED_BYTES)
+        .weigher((final Key key, final Content content) -> content.weight())
+        .build();
+
+    // Keys whose anchor class has been collected.
+    private final static ReferenceQueue<Class<?>> collected = new ReferenceQueue<>();
+
+    private static volatile boolean checkModified = !MiscUtils.isProductionMode();
+
+    /**
+     * @param anchor class the resource name is resolved against.
+     * @param name name of the resource.
+     * @return the resource decoded as UTF-8.
+     * @throws IOException if the resource does not exist or can't be read.
+     */
+    public static String readString(@NotNull(message="anchor must not be null.") final Class<?> anchor,
+                                    @NotNull(message="name must not be null.") final String name) throws IOException {
+        return load(anchor, name).utf8();
+    }
+
+    /**
+     * @param anchor class the resource name is resolved against.
+     * @param name name of the resource.
+     * @param charset encoding of the resource.
+     * @return the resource decoded. Only UTF-8 decodings are cached.
+     * @throws IOException if the resource does not exist or can't be read.
+     */
+    public static String readString(@NotNull(message="anchor must not be null.") final Class<?> anchor,
+                                    @NotNull(message="name must not be null.") final String name,
+                                    @NotNull(message="charset must not be null.") final Charset charset) throws IOException {
+        final Content content = load(anchor, name);
+        return StandardCharsets.UTF_8.equals(charset) ? content.utf8() : charset.decode(content.bytes.duplicate()).toString();
+    }
+
+    /**
+     * @param anchor class the resource name is resolved against.
+     * @param name name of the resource.
+     * @return a read only view of the resource's bytes, positioned at 0.
+     * @throws IOException if the resource does not exist or can't be read.
+     */
+    public static ByteBuffer readBytes(@NotNull(message="anchor must not be null.") final Class<?> anchor,
+                                       @NotNull(message="name must not be null.") final String name) throws IOException {
+        return load(anchor, name).bytes.duplicate();
+    }
+
+    /**
+     * @param check true to check file system resources for modification on every access.
+     */
+    public static void setCheckModified(final boolean check) {
+        checkModified = check;
+    }
+
+    /**
+     * @return true if file system resources are checked for modification on every access.
+     */
+    public static boolean isCheckModified() {
+        return checkModified;
+    }
+
+    /**
+     * Drops every cached resource.
+     */
+    public static void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    private static Content load(final Class<?> anchor, final String name) throws IOException {
+        for(Reference<? extends Class<?>> dead = collected.poll(); dead != null; dead = collected.poll()) {
+            cache.invalidate(dead);
+        }
+
+        final Key key = new Key(anchor, name);
+        try {
+            Content content = cache.get(key, () -> read(anchor, name));
+            if (checkModified && content.isStale()) {
+                cache.asMap().remove(key, content);
+                content = cache.get(key, () -> read(anchor, name));
+            }
+            return content;
+        } catch(final ExecutionException e) {
+            if (e.getCause() instanceof IOException) throw (IOException)e.getCause();
+            throw new IOException(e.getCause());
+        } catch(final UncheckedExecutionException e) {
+            throw (RuntimeException)e.getCause();
+        }
+    }
+
+    private static Content read(final Class<?> anchor, final String name) throws IOException {
+        final URL url = anchor.getResource(name);
+        if (url == null) throw new FileNotFoundException("No resource " + name + " relative to " + anchor.getName());
+
+        final Path file = toPath(url);
+        if (file != null) {
+            // Stat before reading: a change made while reading is caught next time.
+            final long modified = Files.getLastModifiedTime(file).toMillis();
+            try(final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                final long size = channel.size();
+                final ByteBuffer bytes;
+                if (size >= MAP_THRESHOLD) {
+                    bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                } else {
+                    bytes = ByteBuffer.wrap(Files.readAllBytes(file));
+                }
+                return new Content(bytes.asReadOnlyBuffer(), file, modified, size);
+            }
+        }
+
+        final URLConnection connection = url.openConnection();
+        // Otherwise the JarURLConnection keeps the jar open and the bytes read stale once it is replaced.
+        connection.setUseCaches(false);
+        try(final InputStream in = connection.getInputStream()) {
+            return new Content(ByteBuffer.wrap(ByteStreams.toByteArray(in)).asReadOnlyBuffer(), null, 0, 0);
+        }
+    }
+
+    private static Path toPath(final URL url) {
+        if (!"file".equals(url.getProtocol())) return null;
+        try {
+            return Paths.get(url.toURI());
+        } catch(final URISyntaxException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    // The anchor by identity, weakly; a key whose anchor is gone equals only itself.
+    private static final class Key extends WeakReference<Class<?>> {
+        final String name;
+        final int hash;
+
+        Key(final Class<?> anchor, final String name) {
+            super(anchor, collected);
+            this.name = name;
+            this.hash = 31 * System.identityHashCode(anchor) + name.hashCode();
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            final Key other = (Key)o;
+            final Class<?> anchor = get();
+            return anchor != null && anchor == other.get() && name.equals(other.name);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    @RequiredArgsConstructor
+    private static final class Content {
+        final ByteBuffer bytes;  // Read only; always duplicated before use.
+        final Path file;         // Null unless on the file system.
+        final long modified;
+        final long size;
+        private volatile String utf8;
+
+        // The bytes and their UTF-8 decoding at its largest; it is decoded after the cache weighs it.
+        int weight() {
+            return (int)Math.min(Integer.MAX_VALUE, 3L * bytes.capacity());
+        }
+
+        String utf8() {
+            String s = utf8;
+            if (s == null) {
+                s = StandardCharsets.UTF_8.decode(bytes.duplicate()).toString();
+                utf8 = s;
+            }
+            return s;
+        }
+
+        boolean isStale() {
+            if (file == null) return false;
+            try {
+                return Files.getLastModifiedTime(file).toMillis() != modified || Files.size(file) != size;
+            } catch(final IOException e) {
+                return true; // Gone; reloading reports it.
+            }
+        }
+    }
+}
@@ -0,0 +1,197 @@
+/*  Copyright (c) 2016
+ *  by Bjönd, Inc., Boston, MA
+ *
+ *  This software is furnished under a license and may be used only in
+ *  accordance with the terms of such license.  This software may not be
+ *  provided or otherwise made available to any other party.  No title to
+ *  nor ownership of the software is hereby transferred.
+ *
+ *  This software is the intellectual property of Bjönd, Inc.,
+ *  and is protected by the copyright laws of the United States of America.
+ *  All rights reserved internationally.
+ *
+ */
+
+package com.bjond.utilities;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+import javax.validation.constraints.NotNull;
+
+import lombok.extern.slf4j.Slf4j;
+
+
+/** <p> Immutable snapshot of the runtime environment. </p>
+ *
+ *  The environment variables and system properties MiscUtils' runtime helpers
+ *  depend upon, read once. Asking isProductionMode() on every request costs a
+ *  field read rather than a scan of System.getenv().
+ *
+ *  Where the host string comes from no variable it falls back to the local
+ *  address, which needs a DNS lookup that can block for seconds. That lookup
+ *  starts on a background thread as soon as the snapshot is taken. The first
+ *  getHostString() waits for it at most HOST_RESOLUTION_TIMEOUT_MILLIS; if it
+ *  is still not done the localhost default is returned, and keeps being returned
+ *  without waiting again until the lookup completes.
+ *
+ *  refresh() takes a new snapshot, for when the environment or the properties
+ *  are known to have changed, e.g. a test setting ARQUILLIAN.
+ *
+ * <a href="mailto:Stephen.Agneta@bjondinc.com">Steve 'Crash' Agneta</a>
+ *
+ */
+
+@Slf4j
+final public class RuntimeEnvironment {
+    public final static long HOST_RESOLUTION_TIMEOUT_MILLIS = 1000;
+    private final static String DEFAULT_HOST = "http://localhost:8080";
+
+    // A DNS lookup may block; it has its own daemon thread rather than a pool's.
+    private final static Executor resolver = r -> {
+        final Thread t = new Thread(r, "bjond-host-resolver");
+        t.setDaemon(true);
+        t.start();
+    };
+
+    private static volatile RuntimeEnvironment current;
+
+    private final boolean productionMode;
+    private final String openshiftAppName;
+    private final boolean runningUnderArquillian;
+    private final CompletableFuture<String> hostString;
+    private volatile boolean hostStringTimedOut;
+
+    private RuntimeEnvironment(final Map<String, String> env, final Properties properties, final Supplier<InetAddress> localHost) {
+        productionMode = MiscUtils.isProductionMode(env);
+        openshiftAppName = MiscUtils.getOpenshiftAppName(env);
+        runningUnderArquillian = properties.getProperty("ARQUILLIAN") != null;
+
+        if (env.get("OPENSHIFT_PUBLIC_URL") != null) {
+            hostString = CompletableFuture.completedFuture(env.get("OPENSHIFT_PUBLIC_URL"));
+        } else if (env.get("OPENSHIFT_APP_DNS") != null) {
+            hostString = CompletableFuture.completedFuture("http://" + env.get("OPENSHIFT_APP_DNS"));
+        } else {
+            hostString = CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return "http://" + localHost.get().getHostAddress() + ":8080";
+                    } catch(final Exception ex) {
+                        log.error(ex.getMessage());
+                        return DEFAULT_HOST;
+                    }
+                }, resolver);
+        }
+    }
+
+    /**
+     * @return the current snapshot; taken on first use.
+     */
+    public static RuntimeEnvironment get() {
+        RuntimeEnvironment snapshot = current;
+        if (snapshot == null) {
+            synchronized(RuntimeEnvironment.class) {
+                snapshot = current;
+                if (snapshot == null) {
+                    snapshot = current = of(System.getenv(), System.getProperties());
+                }
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * Takes a new snapshot of System.getenv() and the system properties and makes it current.
+     *
+     * @return the new snapshot.
+     */
+    public static RuntimeEnvironment refresh() {
+        synchronized(RuntimeEnvironment.class) {
+            current = of(System.getenv(), System.getProperties());
+            return current;
+        }
+    }
+
+    /**
+     * @param env environment variables, usually System.getenv().
+     * @param properties system properties, usually System.getProperties().
+     * @return a snapshot of them. It is not made current.
+     */
+    public static RuntimeEnvironment of(@NotNull(message="env must not be null.") final Map<String, String> env,
+                                        @NotNull(message="properties must not be null.") final Properties properties) {
+        return of(env, properties, () -> {
+                try {
+                    return InetAddress.getLocalHost();
+                } catch(final UnknownHostException e) {
+                    throw new IllegalStateException(e.getMessage(), e);
+                }
+            });
+    }
+
+    /**
+     * @param env environment variables, usually System.getenv().
+     * @param properties system properties, usually System.getProperties().
+     * @param localHost resolves the local address should the host string need it.
+     * @return a snapshot of them. It is not made current.
+     */
+    public static RuntimeEnvironment of(@NotNull(message="env must not be null.") final Map<String, String> env,
+                                        @NotNull(message="properties must not be null.") final Properties properties,
+                                        @NotNull(message="localHost must not be null.") final Supplier<InetAddress> localHost) {
+        return new RuntimeEnvironment(env, properties, localHost);
+    }
+
+    /**
+     * @return true if BJOND_RUNTIME_MODE was "production". See MiscUtils.isProductionMode.
+     */
+    public boolean isProductionMode() {
+        return productionMode;
+    }
+
+    /**
+     * @return OPENSHIFT_APP_NAME or null.
+     */
+    public String getOpenshiftAppName() {
+        return openshiftAppName;
+    }
+
+    /**
+     * @return true if the ARQUILLIAN system property was set.
+     */
+    public boolean isRunningUnderArquillian() {
+        return runningUnderArquillian;
+    }
+
+    /**
+     * @return the host string as MiscUtils.getHostString describes it, or the localhost
+     *         default while the local address is still being resolved past the timeout.
+     */
+    public String getHostString() {
+        if (hostString.isDone() || hostStringTimedOut) {
+            return hostString.getNow(DEFAULT_HOST);
+        }
+        try {
+            return hostString.get(HOST_RESOLUTION_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch(final TimeoutException e) {
+            log.warn("Resolving the local host address is taking over {}ms, using {} meanwhile.", HOST_RESOLUTION_TIMEOUT_MILLIS, DEFAULT_HOST);
+            hostStringTimedOut = true;
+        } catch(final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch(final ExecutionException e) {
+            log.error(e.getMessage());
+        }
+        return DEFAULT_HOST;
+    }
+
+    @Override
+    public String toString() {
+        return "RuntimeEnvironment(productionMode=" + productionMode + ", openshiftAppName=" + openshiftAppName
+            + ", runningUnderArquillian=" + runningUnderArquillian + ", hostString=" + hostString.getNow("<resolving>") + ")";
+    }
+}
@@ -0,0 +1,369 @@
+/*  Copyright (c) 2016
+ *  by Bjönd, Inc., Boston, MA
+ *
+ *  This software is furnished under a license and may be used only in
+ *  accordance with the terms of such license.  This software may not be
+ *  provided or otherwise made available to any other party.  No title to
+ *  nor ownership of the software is hereby transferred.
+ *
+ *  This software is the intellectual property of Bjönd, Inc.,
+ *  and is protected by the copyright laws of the United States of America.
+ *  All rights reserved internationally.
+ *
+ */
+
+package com.bjond.utilities;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+import javax.naming.Context;
+import javax.naming.InitialContext;
+import javax.naming.NameNotFoundException;
+import javax.naming.NamingException;
+import javax.validation.constraints.NotNull;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+
+/** <p> Caching JNDI service locator. </p>
+ *
+ *  Resolved references are cached per JNDI name, so once a name is resolved
+ *  looking it up again takes no lock and makes no JNDI call. Concurrent misses
+ *  on the same name make a single JNDI call between them. Failures are never
+ *  cached.
+ *
+ *  Context implementations need not be thread safe, so a JNDI call takes a
+ *  Context from a pool of idle ones for itself, and gives it back once done.
+ *  The pool grows by the context factory, as many Contexts as there have been
+ *  concurrent JNDI calls; no lock is held while the call runs.
+ *
+ *  Only the names the cacheable predicate accepts are cached; by default the
+ *  java:global/ ones. Relative java:comp/ and java:module/ names resolve per
+ *  component and are looked up every time, as is anything else. A stateful
+ *  session bean must be looked up every time too, each lookup being a new
+ *  instance: where one is bound under java:global/ pass a predicate leaving
+ *  its name out.
+ *
+ *  What a failed lookup invalidates is up to the FailurePolicy: only the name,
+ *  or the pooled Contexts as well so the next miss starts with a fresh one. A
+ *  cached reference found to be dead, an undeployed bean say, is dropped with
+ *  invalidate(name).
+ *
+ *  Every JNDI call is timed; getMetrics() has the counts and latencies per name.
+ *  prewarm() resolves a list of names up front, at startup for instance.
+ *
+ *  MiscUtils.obtainService goes through getDefault(). For tests setDefault()
+ *  swaps in a locator over an InMemoryContext.
+ *
+ * <a href="mailto:Stephen.Agneta@bjondinc.com">Steve 'Crash' Agneta</a>
+ *
+ */
+
+@Slf4j
+final public class ServiceLocator {
+    private static volatile ServiceLocator defaultLocator = new ServiceLocator(InitialContext::new);
+
+    /** What a failed lookup invalidates besides the name looked up. */
+    public enum FailurePolicy {
+        /** Nothing more: the Context is given back to the pool. */
+        EVICT_NAME,
+        /** The pooled Contexts too; they are closed and the next miss creates a new one. */
+        RESET_CONTEXT
+    }
+
+    private final Callable<? extends Context> contextFactory;
+    private final FailurePolicy failurePolicy;
+    private final Predicate<String> cacheable;
+    private final Cache<String, Object> references;
+    private final ConcurrentMap<String, Timings> timings = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final Queue<Context> idleContexts = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger contextGeneration = new AtomicInteger(); // Bumped by every reset.
+
+    /**
+     * Caches java:global/ references until invalidated and resets the Context on failure.
+     *
+     * @param contextFactory creates the pooled Contexts, e.g. InitialContext::new.
+     */
+    public ServiceLocator(@NotNull(message="contextFactory must not be null.") final Callable<? extends Context> contextFactory) {
+        this(contextFactory, FailurePolicy.RESET_CONTEXT, 0, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Caches java:global/ references.
+     *
+     * @param contextFactory creates the pooled Contexts, e.g. InitialContext::new.
+     * @param failurePolicy what a failed lookup invalidates.
+     * @param expireAfter how long a reference is cached; 0 until invalidated.
+     * @param unit unit of expireAfter.
+     */
+    public ServiceLocator(@NotNull(message="contextFactory must not be null.") final Callable<? extends Context> contextFactory,
+                          @NotNull(message="failurePolicy must not be null.") final FailurePolicy failurePolicy,
+                          final long expireAfter,
+                          @NotNull(message="unit must not be null.") final TimeUnit unit) {
+        this(contextFactory, failurePolicy, expireAfter, unit, ServiceLocator::isGlobalName);
+    }
+
+    /**
+     * @param contextFactory creates the pooled Contexts, e.g. InitialContext::new.
+     * @param failurePolicy what a failed lookup invalidates.
+     * @param expireAfter how long a reference is cached; 0 until invalidated.
+     * @param unit unit of expireAfter.
+     * @param cacheable accepts the names whose references may be cached.
+     */
+    public ServiceLocator(@NotNull(message="contextFactory must not be null.") final Callable<? extends Context> contextFactory,
+                          @NotNull(message="failurePolicy must not be null.") final FailurePolicy failurePolicy,
+                          final long expireAfter,
+                          @NotNull(message="unit must not be null.") final TimeUnit unit,
+                          @NotNull(message="cacheable must not be null.") final Predicate<String> cacheable) {
+        this.contextFactory = contextFactory;
+        this.failurePolicy = failurePolicy;
+        this.cacheable = cacheable;
+        final CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder();
+        if (expireAfter > 0) { builder.expireAfterWrite(expireAfter, unit); }
+        this.references = builder.build();
+    }
+
+    /**
+     * @return the locator MiscUtils.obtainService uses; over an InitialContext unless replaced.
+     */
+    public static ServiceLocator getDefault() {
+        return defaultLocator;
+    }
+
+    /**
+     * @param locator the locator MiscUtils.obtainService is to use from now on.
+     */
+    public static void setDefault(@NotNull(message="locator must not be null.") final ServiceLocator locator) {
+        defaultLocator = locator;
+    }
+
+    /**
+     * @param name JNDI name.
+     * @return true for a java:global/ name, the default test of what may be cached.
+     */
+    public static boolean isGlobalName(@NotNull(message="name must not be null.") final String name) {
+        return name.startsWith("java:global/");
+    }
+
+    /**
+     * @param <T> Type of the service.
+     * @param name JNDI name of the service.
+     * @param type the service's type; null to skip the check, the caller casting unchecked.
+     * @return the service, cached or looked up.
+     * @throws NamingException if the lookup fails.
+     * @throws ClassCastException if what is bound is not a type.
+     */
+    public <T> T lookup(@NotNull(message="name must not be null.") final String name, final Class<T> type) throws NamingException {
+        if (!cacheable.test(name)) {
+            return cast(type, resolve(name));
+        }
+
+        final Object cached = references.getIfPresent(name);
+        if (cached != null) {
+            hits.increment();
+            return cast(type, cached);
+        }
+
+        try {
+            return cast(type, references.get(name, () -> resolve(name)));
+        } catch(final ExecutionException e) {
+            if (e.getCause() instanceof NamingException) throw (NamingException)e.getCause();
+            throw namingException(name, e.getCause());
+        } catch(final UncheckedExecutionException e) {
+            throw namingException(name, e.getCause());
+        }
+    }
+
+    /**
+     * Lookup that never throws, as MiscUtils.obtainService has always behaved.
+     *
+     * @param <T> Type of the service.
+     * @param name JNDI name of the service.
+     * @param type the service's type; null to skip the check, the caller casting unchecked.
+     * @return the service or null if it can't be found or is not a type.
+     */
+    public <T> T find(@NotNull(message="name must not be null.") final String name, final Class<T> type) {
+        try {
+            return lookup(name, type);
+        } catch(final NamingException | ClassCastException e) {
+            log.debug("Unable to obtain service {}: {}", name, e.toString());
+            return null;
+        }
+    }
+
+    /**
+     * Resolves every name now so later lookups of the cacheable ones are cache hits.
+     *
+     * @param names the JNDI names to resolve.
+     * @return the names that failed and why, in the order given; empty if all resolved.
+     */
+    public Map<String, NamingException> prewarm(@NotNull(message="names must not be null.") final Collection<String> names) {
+        final Map<String, NamingException> failures = new LinkedHashMap<>();
+        for(final String name : names) {
+            try {
+                lookup(name, Object.class);
+            } catch(final NamingException e) {
+                log.warn("Unable to prewarm {}: {}", name, e.toString());
+                failures.put(name, e);
+            }
+        }
+        return failures;
+    }
+
+    /**
+     * @param name JNDI name whose cached reference is to be dropped, e.g. after it failed.
+     */
+    public void invalidate(@NotNull(message="name must not be null.") final String name) {
+        references.invalidate(name);
+    }
+
+    /**
+     * Drops every cached reference and the pooled Contexts.
+     */
+    public void invalidateAll() {
+        references.invalidateAll();
+        resetContexts();
+    }
+
+    /**
+     * @return number of lookups answered from the cache.
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return JNDI call metrics per name, sorted by name. A snapshot.
+     */
+    public Map<String, LookupMetrics> getMetrics() {
+        final Map<String, LookupMetrics> metrics = new TreeMap<>();
+        timings.forEach((name, t) -> metrics.put(name, t.snapshot()));
+        return Collections.unmodifiableMap(metrics);
+    }
+
+    // A miss: one JNDI call, timed, on a Context no other thread uses meanwhile.
+    private Object resolve(final String name) throws NamingException {
+        final Timings t = timings.computeIfAbsent(name, n -> new Timings());
+        final int generation = contextGeneration.get();
+        final long start = System.nanoTime();
+        Context context = null;
+        try {
+            context = borrowContext();
+            final Object o = context.lookup(name);
+            if (o == null) throw new NameNotFoundException(name + " is bound to null");
+            t.record(System.nanoTime() - start, false);
+            releaseContext(context, generation);
+            return o;
+        } catch(final NamingException | RuntimeException e) {
+            t.record(System.nanoTime() - start, true);
+            if (failurePolicy == FailurePolicy.RESET_CONTEXT) {
+                resetContexts();
+                if (context != null) { closeContext(context); }
+            } else if (context != null) {
+                releaseContext(context, generation);
+            }
+            throw e;
+        }
+    }
+
+    private Context borrowContext() throws NamingException {
+        final Context idle = idleContexts.poll();
+        if (idle != null) return idle;
+        try {
+            return contextFactory.call();
+        } catch(final NamingException e) {
+            throw e;
+        } catch(final Exception e) {
+            throw namingException("the initial context", e);
+        }
+    }
+
+    // Back to the pool, unless it was reset since the Context was borrowed.
+    private void releaseContext(final Context context, final int generation) {
+        idleContexts.offer(context);
+        if (generation != contextGeneration.get() && idleContexts.remove(context)) {
+            closeContext(context);
+        }
+    }
+
+    private void resetContexts() {
+        contextGeneration.incrementAndGet();
+        for(Context context = idleContexts.poll(); context != null; context = idleContexts.poll()) {
+            closeContext(context);
+        }
+    }
+
+    private static void closeContext(final Context context) {
+        try {
+            context.close();
+        } catch(final NamingException e) {
+            log.debug("Closing the JNDI context failed: {}", e.toString());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T cast(final Class<T> type, final Object o) {
+        return (type == null) ? (T)o : type.cast(o);
+    }
+
+    private static NamingException namingException(final String name, final Throwable cause) {
+        final NamingException e = new NamingException("Unable to look up " + name);
+        e.setRootCause(cause);
+        return e;
+    }
+
+    /** Counts and latencies of the JNDI calls made for one name. */
+    @Value
+    public static class LookupMetrics {
+        long lookups;
+        long failures;
+        long totalNanos;
+        long maxNanos;
+
+        /**
+         * @return mean latency of a JNDI call in nanoseconds; 0 if none were made.
+         */
+        public long getMeanNanos() {
+            return lookups == 0 ? 0 : totalNanos / lookups;
+        }
+    }
+
+    private static final class Timings {
+        final LongAdder lookups = new LongAdder();
+        final LongAdder failures = new LongAdder();
+        final LongAdder totalNanos = new LongAdder();
+        final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+        void record(final long nanos, final boolean failed) {
+            lookups.increment();
+            if (failed) { failures.increment(); }
+            totalNanos.add(nanos);
+            maxNanos.accumulate(nanos);
+        }
+
+        LookupMetrics snapshot() {
+            return new LookupMetrics(lookups.sum(), failures.sum(), totalNanos.sum(), maxNanos.get());
+        }
+    }
+}
@@ -0,0 +1,130 @@
+/*  Copyright (c) 2016
+ *  by Bjönd, Inc., Boston, MA
+ *
+ *  This software is furnished under a license and may be used only in
+ *  accordance with the terms of such license.  This software may not be
+ *  provided or otherwise made available to any other party.  No title to
+ *  nor ownership of the software is hereby transferred.
+ *
+ *  This software is the intellectual property of Bjönd, Inc.,
+ *  and is protected by the copyright laws of the United States of America.
+ *  All rights reserved internationally.
+ *
+ */
+
+package com.bjond.utilities;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.fasterxml.uuid.EthernetAddress;
+import com.fasterxml.uuid.NoArgGenerator;
+import com.fasterxml.uuid.UUIDType;
+
+
+/** <p> Lock free, striped, time based (version 1) UUID generator. </p>
+ *
+ *  JUG's TimeBasedGenerator funnels every caller through one synchronized timer.
+ *  Here threads are spread over a number of stripes and each stripe owns its own
+ *  timestamp, advanced with a compare and set. Every stripe is given its own clock
+ *  sequence so two stripes can hand out the same timestamp without ever producing
+ *  the same UUID. The stripes take the clock sequences following that of JUG's
+ *  JVM wide timer, at most 1024 of the 16384, so they never equal it and every
+ *  JUG time based generator of the JVM may be used beside them.
+ *
+ *  A stripe hands out at most one timestamp per 100ns tick. Should a stripe be
+ *  asked for more it borrows ticks from the future and the clock catches up.
+ *
+ * <a href="mailto:Stephen.Agneta@bjondinc.com">Steve 'Crash' Agneta</a>
+ *
+ */
+
+final class StripedTimeBasedGenerator extends NoArgGenerator {
+    // 100ns intervals between the UUID epoch, 1582-10-15, and the Unix epoch.
+    private final static long GREGORIAN_OFFSET = 0x01B21DD213814000L;
+
+    private final long node;
+    private final Stripe[] stripes;
+    private final int mask;
+
+    /**
+     * @param nic the node of every UUID generated.
+     * @param reservedClockSequence clock sequence that must never be used; that of JUG's shared timer.
+     * @param concurrency expected number of concurrently generating threads. Rounded up to a power of 2 at most 1024.
+     */
+    StripedTimeBasedGenerator(final EthernetAddress nic, final int reservedClockSequence, final int concurrency) {
+        int count = 1;
+        while(count < concurrency && count < 1024) { count <<= 1; }
+
+        node = nic.toLong();
+        stripes = new Stripe[count];
+        mask = count - 1;
+        for(int i = 0; i < count; i++) {
+            stripes[i] = new Stripe((reservedClockSequence + 1 + i) & 0x3FFF);
+        }
+    }
+
+    @Override
+    public UUIDType getType() {
+        return UUIDType.TIME_BASED;
+    }
+
+    @Override
+    public UUID generate() {
+        final Stripe stripe = stripe();
+        return construct(stripe.reserve(1), stripe.clockSequence);
+    }
+
+    /**
+     * Reserves a block of n consecutive timestamps in one step and fills out with them.
+     *
+     * @param out receives the UUIDs.
+     * @return out
+     */
+    UUID[] generate(final UUID[] out) {
+        final Stripe stripe = stripe();
+        final long first = stripe.reserve(out.length);
+        for(int i = 0; i < out.length; i++) {
+            out[i] = construct(first + i, stripe.clockSequence);
+        }
+        return out;
+    }
+
+    private Stripe stripe() {
+        return stripes[(int)Thread.currentThread().getId() & mask];
+    }
+
+    private UUID construct(final long timestamp, final int clockSequence) {
+        // time_low | time_mid | version | time_hi
+        final long msb = ((timestamp & 0xFFFFFFFFL) << 32)
+            | (((timestamp >>> 32) & 0xFFFFL) << 16)
+            | 0x1000L
+            | ((timestamp >>> 48) & 0x0FFFL);
+        // variant | clock sequence | node
+        final long lsb = ((long)(0x8000 | clockSequence) << 48) | node;
+        return new UUID(msb, lsb);
+    }
+
+    private static final class Stripe {
+        final int clockSequence;
+
+        // Last timestamp handed out, in 100ns ticks since the UUID epoch.
+        final AtomicLong last = new AtomicLong();
+
+        Stripe(final int clockSequence) {
+            this.clockSequence = clockSequence;
+        }
+
+        // Returns the first of count consecutive timestamps no one else will get.
+        long reserve(final int count) {
+            final long now = System.currentTimeMillis() * 10000L + GREGORIAN_OFFSET;
+            while(true) {
+                final long previous = last.get();
+                final long first = Math.max(previous + 1, now);
+                if(last.compareAndSet(previous, first + count - 1)) {
+                    return first;
+                }
+            }
+        }
+    }
+}
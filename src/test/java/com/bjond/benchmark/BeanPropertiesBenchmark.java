@@ -0,0 +1,142 @@
+/*  Copyright (c) 2016
+ *  by Bjönd Health, Inc., Boston, MA
+ *
+ *  This software is furnished under a license and may be used only in
+ *  accordance with the terms of such license.  This software may not be
+ *  provided or otherwise made available to any other party.  No title to
+ *  nor ownership of the software is hereby transferred.
+ *
+ *  This software is the intellectual property of Bjönd Health, Inc.,
+ *  and is protected by the copyright laws of the United States of America.
+ *  All rights reserved internationally.
+ *
+ */
+
+package com.bjond.benchmark;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.apache.commons.beanutils.BeanUtils;
+import org.jooq.lambda.Unchecked;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.bjond.utilities.MiscUtils;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.val;
+
+/** JMH Benchmark BeanPropertiesBenchmark
+ *
+ *  MiscUtils.extend, with its cached copy plans, and getNonNullProperties
+ *  against the original BeanUtils.describe / getMethod / populate
+ *  implementation, kept here verbatim as the baseline.
+ *
+ *  $ gradle jmh -Pbench=BeanProperties
+ *
+ */
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BeanPropertiesBenchmark {
+
+    static public class Dto {
+        @Getter @Setter String id;
+        @Getter @Setter String name;
+        @Getter @Setter String description;
+        @Getter @Setter String email;
+        @Getter @Setter String phone;
+        @Getter @Setter String street;
+        @Getter @Setter String city;
+        @Getter @Setter String state;
+        @Getter @Setter Integer priority;
+        @Getter @Setter Long version;
+    }
+
+    Dto target;
+    Dto patch;
+
+    @Setup
+    public void setup() {
+        target = new Dto();
+        target.setId("8d5f0d1e-ffb7-11e5-86aa-5e5517507c66");
+        target.setName("Original");
+        target.setCity("Boston");
+        target.setVersion(1L);
+
+        // A typical PATCH: a few fields set, the rest null.
+        patch = new Dto();
+        patch.setName("Patched");
+        patch.setDescription("Now with a description");
+        patch.setPriority(3);
+        patch.setVersion(2L);
+    }
+
+    @Benchmark
+    public Object extend() throws Exception {
+        return MiscUtils.extend(target, patch);
+    }
+
+    @Benchmark
+    public Object extendLegacy() throws Exception {
+        BeanUtils.populate(target, legacyGetNonNullProperties(patch));
+        return target;
+    }
+
+    // Hydration style merge of several sources.
+    @Benchmark
+    public Object extendMany() throws Exception {
+        return MiscUtils.extend(target, patch, target, patch);
+    }
+
+    @Benchmark
+    public Object extendManyLegacy() throws Exception {
+        for (final Object o : new Object[] {patch, target, patch}) {
+            BeanUtils.populate(target, legacyGetNonNullProperties(o));
+        }
+        return target;
+    }
+
+    @Benchmark
+    public Map<String, Object> getNonNullProperties() throws Exception {
+        return MiscUtils.getNonNullProperties(patch);
+    }
+
+    @Benchmark
+    public Map<String, Object> getNonNullPropertiesLegacy() throws Exception {
+        return legacyGetNonNullProperties(patch);
+    }
+
+    /////////////////////////////////////////////////////////////////////////
+    //              The original implementation, for comparison            //
+    /////////////////////////////////////////////////////////////////////////
+
+    static Map<String, Object> legacyGetNonNullProperties(final Object o) throws Exception {
+        val props = BeanUtils.describe(o);
+        props.remove("class");
+        return props.keySet().stream()
+            .filter(Unchecked.predicate(k -> legacyGetPropertyValue(o, k) != null))
+            .collect(Collectors.toMap(Function.identity(), Unchecked.function(k-> legacyGetPropertyValue(o,k))));
+    }
+
+    static Object legacyGetPropertyValue(Object o, String propertyName) throws Exception {
+        val methodName = "get" + propertyName.substring(0, 1).toUpperCase() + propertyName.substring(1);
+        return o.getClass().getMethod(methodName).invoke(o);
+    }
+}
@@ -0,0 +1,106 @@
+/*  Copyright (c) 2016
+ *  by Bjönd Health, Inc., Boston, MA
+ *
+ *  This software is furnished under a license and may be used only in
+ *  accordance with the terms of such license.  This software may not be
+ *  provided or otherwise made available to any other party.  No title to
+ *  nor ownership of the software is hereby transferred.
+ *
+ *  This software is the intellectual property of Bjönd Health, Inc.,
+ *  and is protected by the copyright laws of the United States of America.
+ *  All rights reserved internationally.
+ *
+ */
+
+package com.bjond.benchmark;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.bjond.utilities.JSONUtils;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/** JMH Benchmark CloneBenchmark
+ *
+ *  JSONUtils.clone through a TokenBuffer and JSONUtils.deepCopy, field by
+ *  field, against the original round trip through a JSON String.
+ *
+ *  $ gradle jmh -Pbench=Clone
+ *
+ */
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CloneBenchmark {
+
+    static public class Step {
+        @Getter @Setter String id;
+        @Getter @Setter String name;
+        @Getter @Setter int order;
+        @Getter @Setter boolean complete;
+        @Getter @Setter Date due;
+    }
+
+    static public class Workflow {
+        @Getter @Setter String id;
+        @Getter @Setter String name;
+        @Getter @Setter String owner;
+        @Getter @Setter Long version;
+        @Getter @Setter List<Step> steps = new ArrayList<>();
+    }
+
+    Workflow workflow;
+
+    @Setup
+    public void setup() {
+        workflow = new Workflow();
+        workflow.setId("8d5f0d1e-ffb7-11e5-86aa-5e5517507c66");
+        workflow.setName("Discharge");
+        workflow.setOwner("Ward 7");
+        workflow.setVersion(12L);
+        for(int i = 0; i < 10; i++) {
+            final Step step = new Step();
+            step.setId("step-" + i);
+            step.setName("Step number " + i);
+            step.setOrder(i);
+            step.setComplete(i < 4);
+            step.setDue(new Date(1_460_000_000_000L + i * 3_600_000L));
+            workflow.getSteps().add(step);
+        }
+    }
+
+    @Benchmark
+    public Workflow deepCopy() throws IOException {
+        return JSONUtils.deepCopy(workflow);
+    }
+
+    @Benchmark
+    public Workflow tokenBufferClone() throws IOException {
+        return JSONUtils.clone(workflow, Workflow.class);
+    }
+
+    @Benchmark
+    public Workflow stringCloneLegacy() throws IOException {
+        return JSONUtils.fromJSON(JSONUtils.toJSON(workflow), Workflow.class);
+    }
+}
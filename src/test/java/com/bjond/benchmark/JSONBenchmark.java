@@ -0,0 +1,124 @@
+/*  Copyright (c) 2016
+ *  by Bjönd Health, Inc., Boston, MA
+ *
+ *  This software is furnished under a license and may be used only in
+ *  accordance with the terms of such license.  This software may not be
+ *  provided or otherwise made available to any other party.  No title to
+ *  nor ownership of the software is hereby transferred.
+ *
+ *  This software is the intellectual property of Bjönd Health, Inc.,
+ *  and is protected by the copyright laws of the United States of America.
+ *  All rights reserved internationally.
+ *
+ */
+
+package com.bjond.benchmark;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.bjond.utilities.JSONUtils;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/** JMH Benchmark JSONBenchmark
+ *
+ *  JSONUtils.toMap and toObjectMap, read through cached ObjectReaders, and
+ *  the streaming prettyPrint against the original new ObjectMapper per call;
+ *  and toJSONBytes against toJSON followed by getBytes.
+ *
+ *  $ gradle jmh -Pbench=JSON
+ *
+ */
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JSONBenchmark {
+
+    Map<String, Object> document;
+    String json;
+
+    @Setup
+    public void setup() throws IOException {
+        // A typical REST payload: a few scalars and a list of small records.
+        document = new LinkedHashMap<>();
+        document.put("id", "8d5f0d1e-ffb7-11e5-86aa-5e5517507c66");
+        document.put("name", "Ward 7 – Cardiology");
+        document.put("active", true);
+        final List<Map<String, Object>> beds = new ArrayList<>();
+        for(int i = 0; i < 20; i++) {
+            final Map<String, Object> bed = new LinkedHashMap<>();
+            bed.put("number", i);
+            bed.put("label", "Bed-" + i);
+            bed.put("occupied", i % 3 == 0);
+            beds.add(bed);
+        }
+        document.put("beds", beds);
+        json = JSONUtils.toJSON(document);
+    }
+
+    @Benchmark
+    public Map<String, Object> toMap() throws IOException {
+        return JSONUtils.toMap(json);
+    }
+
+    @Benchmark
+    public Map<String, Object> toMapLegacy() throws IOException {
+        return new ObjectMapper().readValue(json, new TypeReference<HashMap<String, Object>>(){});
+    }
+
+    @Benchmark
+    public Map<Object, Object> toObjectMap() throws IOException {
+        return JSONUtils.toObjectMap(json);
+    }
+
+    @Benchmark
+    public Map<Object, Object> toObjectMapLegacy() throws IOException {
+        return new ObjectMapper().readValue(json, new TypeReference<HashMap<Object, Object>>(){});
+    }
+
+    @Benchmark
+    public String prettyPrint() throws IOException {
+        return JSONUtils.prettyPrint(json);
+    }
+
+    @Benchmark
+    public String prettyPrintLegacy() throws IOException {
+        final Map<String, Object> map = new ObjectMapper().readValue(json, new TypeReference<HashMap<String, Object>>(){});
+        return JSONUtils.constructJackson().writerWithDefaultPrettyPrinter().writeValueAsString(map);
+    }
+
+    @Benchmark
+    public byte[] toJSONBytes() throws IOException {
+        return JSONUtils.toJSONBytes(document);
+    }
+
+    @Benchmark
+    public byte[] toJSONBytesLegacy() throws IOException {
+        final StringWriter writer = new StringWriter();
+        JSONUtils.constructJackson().writeValue(writer, document);
+        return writer.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,85 @@
+/*  Copyright (c) 2016
+ *  by Bjönd Health, Inc., Boston, MA
+ *
+ *  This software is furnished under a license and may be used only in
+ *  accordance with the terms of such license.  This software may not be
+ *  provided or otherwise made available to any other party.  No title to
+ *  nor ownership of the software is hereby transferred.
+ *
+ *  This software is the intellectual property of Bjönd Health, Inc.,
+ *  and is protected by the copyright laws of the United States of America.
+ *  All rights reserved internationally.
+ *
+ */
+
+package com.bjond.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.bjond.utilities.MiscUtils;
+
+/** JMH Benchmark NaturalSortBenchmark
+ *
+ *  Legacy 75 place natural sort keys against the compact keys. Average key
+ *  sizes are printed at setup; the benchmarks measure encode throughput.
+ *
+ *  $ gradle jmh -Pbench=NaturalSort
+ *
+ */
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class NaturalSortBenchmark {
+
+    String[] names;
+
+    @Setup
+    public void setup() {
+        // Typical names: words, unit numbers, dates and the odd serial number.
+        final Random random = new Random(42);
+        final String[] words = {"Room ", "Patient ", "Bed-", "Ward ", "Invoice #", "v", "Floor "};
+        names = new String[4096];
+        long legacy = 0, compact = 0, original = 0;
+        for(int i = 0; i < names.length; i++) {
+            names[i] = words[random.nextInt(words.length)] + random.nextInt(1000)
+                + "/" + (2000 + random.nextInt(20)) + "-" + random.nextInt(13)
+                + (random.nextBoolean() ? " " + words[random.nextInt(words.length)] + random.nextInt(1_000_000) : "");
+            original += names[i].length();
+            legacy += MiscUtils.normalizeToNaturalSortOrder(names[i]).length();
+            compact += MiscUtils.normalizeToCompactNaturalSortOrder(names[i]).length();
+        }
+        System.out.printf("%nAverage key length - original: %.1f, legacy: %.1f, compact: %.1f%n",
+                          (double)original / names.length, (double)legacy / names.length, (double)compact / names.length);
+    }
+
+    @Benchmark
+    public void legacyKeys(final Blackhole bh) {
+        for(final String name : names) {
+            bh.consume(MiscUtils.normalizeToNaturalSortOrder(name));
+        }
+    }
+
+    @Benchmark
+    public void compactKeys(final Blackhole bh) {
+        for(final String name : names) {
+            bh.consume(MiscUtils.normalizeToCompactNaturalSortOrder(name));
+        }
+    }
+}
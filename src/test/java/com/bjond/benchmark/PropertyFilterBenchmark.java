@@ -0,0 +1,130 @@
+/*  Copyright (c) 2016
+ *  by Bjönd Health, Inc., Boston, MA
+ *
+ *  This software is furnished under a license and may be used only in
+ *  accordance with the terms of such license.  This software may not be
+ *  provided or otherwise made available to any other party.  No title to
+ *  nor ownership of the software is hereby transferred.
+ *
+ *  This software is the intellectual property of Bjönd Health, Inc.,
+ *  and is protected by the copyright laws of the United States of America.
+ *  All rights reserved internationally.
+ *
+ */
+
+package com.bjond.benchmark;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.bjond.json.BjondFilter;
+import com.bjond.json.BjondPropertyFilter;
+import com.bjond.json.BjondPropertyFilter.FilterAction;
+import com.bjond.utilities.JSONUtils;
+import com.fasterxml.jackson.annotation.JsonFilter;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/** JMH Benchmark PropertyFilterBenchmark
+ *
+ *  BjondPropertyFilter.toJSON and its compiledWriter against the original
+ *  new ObjectMapper per call implementation, kept here verbatim as the
+ *  baseline, and against unfiltered JSONUtils.toJSON.
+ *
+ *  $ gradle jmh -Pbench=PropertyFilter
+ *
+ */
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PropertyFilterBenchmark {
+
+    @JsonFilter(BjondPropertyFilter.NAME)
+    static public class Patient {
+        @Getter @Setter String id;
+        @BjondFilter(flags = {"summary", "detail"}) @Getter @Setter String name;
+        @BjondFilter(flags = {"summary", "detail"}) @Getter @Setter String ward;
+        @BjondFilter(flags = {"detail"}) @Getter @Setter String notes;
+        @BjondFilter(flags = {"detail"}) @Getter @Setter Integer age;
+        @BjondFilter(flags = {"audit"}) @Getter @Setter String createdBy;
+        @BjondFilter(flags = {"audit"}) @Getter @Setter Long version;
+    }
+
+    List<Patient> patients;
+
+    @Setup
+    public void setup() throws IOException {
+        patients = new ArrayList<>();
+        for(int i = 0; i < 20; i++) {
+            final Patient p = new Patient();
+            p.setId("patient-" + i);
+            p.setName("Patient number " + i);
+            p.setWard("Ward " + (i % 4));
+            p.setNotes("Nothing of note");
+            p.setAge(20 + i);
+            p.setCreatedBy("admin");
+            p.setVersion((long)i);
+            patients.add(p);
+        }
+        if (!toJSON().equals(toJSONLegacy()) || !toJSON().equals(compiledToJSON())) {
+            throw new IllegalStateException("Filtered output differs from the original implementation.");
+        }
+    }
+
+    @Benchmark
+    public String toJSON() throws IOException {
+        return BjondPropertyFilter.toJSON(patients, FilterAction.INCLUDE, "summary");
+    }
+
+    @Benchmark
+    public String compiledToJSON() throws IOException {
+        return BjondPropertyFilter.compiledWriter(false, FilterAction.INCLUDE, "summary").writeValueAsString(patients);
+    }
+
+    @Benchmark
+    public String toJSONLegacy() throws IOException {
+        return legacyToJSON(patients, false, FilterAction.INCLUDE, "summary");
+    }
+
+    @Benchmark
+    public String toJSONUnfiltered() throws IOException {
+        return JSONUtils.toJSON(patients);
+    }
+
+    /////////////////////////////////////////////////////////////////////////
+    //              The original implementation, for comparison            //
+    /////////////////////////////////////////////////////////////////////////
+
+    static String legacyToJSON(Object o, boolean pretty, FilterAction action, String ... flags) throws JsonProcessingException {
+        final SimpleFilterProvider filters = new SimpleFilterProvider().addFilter(BjondPropertyFilter.NAME, new BjondPropertyFilter(action, flags));
+        ObjectMapper mapper = new ObjectMapper();
+        ObjectWriter w = mapper.writer(filters).with(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS);
+        if (pretty) {
+            w = mapper.writer(filters).withDefaultPrettyPrinter();
+        }
+        return w.writeValueAsString(o);
+    }
+}
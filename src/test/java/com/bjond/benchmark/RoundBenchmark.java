@@ -0,0 +1,89 @@
+/*  Copyright (c) 2016
+ *  by Bjönd Health, Inc., Boston, MA
+ *
+ *  This software is furnished under a license and may be used only in
+ *  accordance with the terms of such license.  This software may not be
+ *  provided or otherwise made available to any other party.  No title to
+ *  nor ownership of the software is hereby transferred.
+ *
+ *  This software is the intellectual property of Bjönd Health, Inc.,
+ *  and is protected by the copyright laws of the United States of America.
+ *  All rights reserved internationally.
+ *
+ */
+
+package com.bjond.benchmark;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.bjond.utilities.MiscUtils;
+
+/** JMH Benchmark RoundBenchmark
+ *
+ *  MiscUtils.round, single and bulk, against the original BigDecimal
+ *  implementation over a report sized column of amounts.
+ *
+ *  $ gradle jmh -Pbench=Round
+ *
+ */
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RoundBenchmark {
+
+    @Param({"2", "6"})
+    int places;
+
+    double[] values;
+    double[] out;
+
+    @Setup
+    public void setup() {
+        final Random random = new Random(42);
+        values = new double[4096];
+        out = new double[values.length];
+        for(int i = 0; i < values.length; i++) {
+            values[i] = (random.nextDouble() - 0.5) * 100_000;
+        }
+    }
+
+    @Benchmark
+    public void round(final Blackhole bh) {
+        for(final double value : values) {
+            bh.consume(MiscUtils.round(value, places));
+        }
+    }
+
+    @Benchmark
+    public double[] roundBulk() {
+        MiscUtils.round(values, out, places);
+        return out;
+    }
+
+    @Benchmark
+    public void roundLegacy(final Blackhole bh) {
+        for(final double value : values) {
+            bh.consume(new BigDecimal(value).setScale(places, RoundingMode.HALF_UP).doubleValue());
+        }
+    }
+}
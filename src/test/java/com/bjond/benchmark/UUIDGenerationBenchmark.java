@@ -0,0 +1,81 @@
+/*  Copyright (c) 2016
+ *  by Bjönd Health, Inc., Boston, MA
+ *
+ *  This software is furnished under a license and may be used only in
+ *  accordance with the terms of such license.  This software may not be
+ *  provided or otherwise made available to any other party.  No title to
+ *  nor ownership of the software is hereby transferred.
+ *
+ *  This software is the intellectual property of Bjönd Health, Inc.,
+ *  and is protected by the copyright laws of the United States of America.
+ *  All rights reserved internationally.
+ *
+ */
+
+package com.bjond.benchmark;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.bjond.utilities.MiscUtils;
+
+/** JMH Benchmark UUIDGenerationBenchmark
+ *
+ *  UUID generation throughput of every MiscUtils.UUIDStrategy. Thread count
+ *  is what matters here so run main() which repeats the lot at 1, 4, 16 and
+ *  32 threads, or pick one:
+ *
+ *  $ gradle jmh -Pbench=UUIDGeneration   (JMH default of 1 thread)
+ *
+ */
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class UUIDGenerationBenchmark {
+
+    @Param({"TIME_BASED", "STRIPED_TIME_BASED", "TIME_ORDERED"})
+    public MiscUtils.UUIDStrategy strategy;
+
+    @Setup
+    public void setup() {
+        MiscUtils.setUUIDStrategy(strategy);
+    }
+
+    @Benchmark
+    public UUID generate() {
+        return MiscUtils.generateUUIDObject();
+    }
+
+    // Batches of 64; divide by 64 for per UUID throughput.
+    @Benchmark
+    public UUID[] generateBatch() {
+        return MiscUtils.generateUUIDObjects(64);
+    }
+
+    public static void main(final String[] args) throws Exception {
+        for(final int threads : new int[] {1, 4, 16, 32}) {
+            new Runner(new OptionsBuilder()
+                       .include(UUIDGenerationBenchmark.class.getSimpleName())
+                       .threads(threads)
+                       .build()).run();
+        }
+    }
+}
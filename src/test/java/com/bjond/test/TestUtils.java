@@ -18,12 +18,81 @@ import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.net.InetAddress;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
 
+import javax.naming.Context;
+import javax.naming.NamingException;
+
+import org.apache.commons.lang3.StringUtils;
 import org.junit.Assert;
 import org.junit.Test;
 
+import com.bjond.constants.ErrorCodes;
+import com.bjond.json.BjondFilter;
+import com.bjond.json.BjondPropertyFilter;
+import com.bjond.json.BjondPropertyFilter.FilterAction;
+import com.bjond.utilities.CartesianProduct;
+import com.bjond.utilities.Digests;
+import com.bjond.utilities.Escaper;
+import com.bjond.utilities.InMemoryContext;
+import com.bjond.utilities.JSONUtils;
 import com.bjond.utilities.MiscUtils;
+import com.bjond.utilities.NaturalOrderComparator;
+import com.bjond.utilities.ResourceLoader;
+import com.bjond.utilities.RuntimeEnvironment;
+import com.bjond.utilities.ServiceLocator;
+
+import com.fasterxml.jackson.annotation.JsonAnyGetter;
+import com.fasterxml.jackson.annotation.JsonFilter;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
+import com.fasterxml.jackson.databind.util.RawValue;
+import com.fasterxml.uuid.Generators;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.MapMaker;
 
 import lombok.Getter;
 import lombok.Setter;
@@ -43,11 +112,72 @@ public class TestUtils {
     //                      Unit Tests below this point                    //
     /////////////////////////////////////////////////////////////////////////
 
+	static public class MyNode {
+		@Getter @Setter String name;
+		@Getter @Setter int weight;
+		@Getter @Setter Date created;
+		@Getter @Setter MyColor color;
+		@Getter @Setter int[] scores;
+		@Getter @Setter List<MyNode> children = new ArrayList<>();
+		@Getter @Setter Map<String, Object> attributes = new LinkedHashMap<>();
+		@Getter @Setter @JsonIgnore MyNode parent;
+	}
+
+	@JsonFilter(BjondPropertyFilter.NAME)
+	static public class MyFilteredBean {
+		@Getter @Setter String id = "1";
+		@BjondFilter(flags = {"summary", "detail"}) @Getter @Setter String name = "Ward 7";
+		@BjondFilter(flags = {"detail"}) @Getter @Setter String notes = "Quiet";
+		@BjondFilter(flags = {"audit"}) @Getter @Setter Map<String, Integer> counts = new HashMap<>();
+	}
+
+	@JsonFilter(BjondPropertyFilter.NAME)
+	static public class MyLateBean {
+		@BjondFilter(flags = {"late"}) @Getter @Setter String note = "Late";
+	}
+
+	@JsonFilter(BjondPropertyFilter.NAME)
+	static public class MyExtensibleBean {
+		@Getter @Setter String id = "2";
+		@JsonIgnore @Getter final Map<String, Object> extra = new TreeMap<>();
+
+		@BjondFilter(flags = {"detail"})
+		@JsonAnyGetter
+		public Map<String, Object> any() { return extra; }
+	}
+
+	static public class MyConcurrentBean {
+		@Getter @Setter ConcurrentHashMap<String, Integer> counts = new ConcurrentHashMap<>();
+		@Getter @Setter CopyOnWriteArrayList<String> listeners = new CopyOnWriteArrayList<>();
+		@Getter @Setter Properties settings = new Properties();
+		@Getter @Setter ImmutableList<String> tags = ImmutableList.of("a", "b");
+		@Getter @Setter ConcurrentMap<String, Integer> cache = new MapMaker().makeMap();
+	}
+
 	static public class MyBean {
 		@Getter @Setter String prop1;
 		@Getter @Setter String prop2;
 	}
 
+	static public class MyOtherBean {
+		@Getter @Setter String prop1;
+		@Getter @Setter int count;
+		@Getter @Setter boolean active;
+	}
+
+	public enum MyColor {
+		RED,
+		@JsonProperty("dark-green") GREEN,
+		Blue,
+		BLUE
+	}
+
+	static public class MyPatch {
+		@Getter @Setter String prop1;
+		@Getter @Setter String count;
+		@Getter @Setter Boolean active;
+	}
+
      
     
     @Test
@@ -116,7 +246,825 @@ public class TestUtils {
         assertThat(MiscUtils.normalizeToNaturalSortOrder("")).isNullOrEmpty();
         assertThat(MiscUtils.normalizeToNaturalSortOrder(null)).isNullOrEmpty();
 
-    }    
+    }
 
-}
+    @Test
+	public void test_NaturalOrderComparator() throws Exception {
+        final Comparator<CharSequence> c = NaturalOrderComparator.INSTANCE;
+
+        assertThat(c.compare("aa2", "aa11")).isNegative();
+        assertThat(c.compare("aa11bb22cc33ff", "aa11bb22cc33ff")).isZero();
+        assertThat(c.compare("a007b", "a7b")).isZero();
+        assertThat(c.compare(null, "   ")).isZero();
+        assertThat(c.compare("", "0")).isNegative();
+
+        // Numerics beyond 75 places are still ordered correctly.
+        final String big = "1" + StringUtils.repeat('0', 80);
+        final String bigger = "2" + StringUtils.repeat('0', 80);
+        assertThat(c.compare("x" + big, "x" + bigger)).isNegative();
+        assertThat(c.compare("x" + bigger, "x9")).isPositive();
+
+        // Must agree with the normalizer on anything under 75 places.
+        final Random random = new Random(1955);
+        final char[] alphabet = "0123456789 aZ_!:~".toCharArray();
+        final List<String> values = new ArrayList<>();
+        for(int i = 0; i < 2000; i++) {
+            final char[] chars = new char[random.nextInt(12)];
+            for(int j = 0; j < chars.length; j++) { chars[j] = alphabet[random.nextInt(alphabet.length)]; }
+            values.add(new String(chars));
+        }
+        values.addAll(Arrays.asList(null, "", " ", "aa11bb22cc33ff", "11aa22bb33cc44", "111"));
+
+        for(int i = 0; i < values.size(); i++) {
+            final String a = values.get(i);
+            final String b = values.get((i * 7 + 3) % values.size());
+            final int expected = Integer.signum(MiscUtils.normalizeToNaturalSortOrder(a).compareTo(MiscUtils.normalizeToNaturalSortOrder(b)));
+            assertThat(Integer.signum(c.compare(a, b))).as("%s vs %s", a, b).isEqualTo(expected);
+        }
+
+        final List<MyBean> beans = new ArrayList<>();
+        for(final String name : Arrays.asList("file10", "file9", "file100")) {
+            final MyBean bean = new MyBean();
+            bean.setProp1(name);
+            beans.add(bean);
+        }
+        beans.sort(NaturalOrderComparator.comparing(MyBean::getProp1));
+        assertThat(beans).extracting("prop1").containsExactly("file9", "file10", "file100");
+    }
+
+    @Test
+	public void test_normalizeToCompactNaturalSortOrder() throws Exception {
+        assertThat(MiscUtils.normalizeToCompactNaturalSortOrder("aa11bb22cc33ff")).isEqualTo("aa211bb222cc233ff");
+        assertThat(MiscUtils.normalizeToCompactNaturalSortOrder("a007b0")).isEqualTo("a17b0");
+        assertThat(MiscUtils.normalizeToCompactNaturalSortOrder("123456789")).isEqualTo("919123456789");
+        assertThat(MiscUtils.normalizeToCompactNaturalSortOrder("now is the time")).isEqualTo("now is the time");
+        assertThat(MiscUtils.normalizeToCompactNaturalSortOrder(null)).isEmpty();
+
+        // Same order as the comparator, numerics of any length included.
+        final Random random = new Random(1984);
+        final char[] alphabet = "00123456789 aZ_!:~".toCharArray();
+        final List<String> values = new ArrayList<>();
+        for(int i = 0; i < 2000; i++) {
+            final char[] chars = new char[random.nextInt(i % 10 == 0 ? 120 : 12)];
+            for(int j = 0; j < chars.length; j++) { chars[j] = alphabet[random.nextInt(alphabet.length)]; }
+            values.add(new String(chars));
+        }
+
+        for(int i = 0; i < values.size(); i++) {
+            final String a = values.get(i);
+            final String b = values.get((i * 13 + 5) % values.size());
+            final String keyA = MiscUtils.normalizeToCompactNaturalSortOrder(a);
+            final String keyB = MiscUtils.normalizeToCompactNaturalSortOrder(b);
+            assertThat(Integer.signum(keyA.compareTo(keyB))).as("%s vs %s", a, b)
+                .isEqualTo(Integer.signum(NaturalOrderComparator.INSTANCE.compare(a, b)));
+
+            if(a.length() < 75) {
+                assertThat(MiscUtils.decodeCompactNaturalSortOrder(keyA)).isEqualTo(MiscUtils.normalizeToNaturalSortOrder(a));
+            }
+        }
+
+        for(final String malformed : Arrays.asList("a2", "a21b", "a3012", "a01")) {
+            try {
+                MiscUtils.decodeCompactNaturalSortOrder(malformed);
+                Assert.fail("Expected failure decoding " + malformed);
+            } catch(final IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+	public void test_normalizeAllToNaturalSortOrder() throws Exception {
+        // Large enough to be split across the fork-join pool.
+        final String[] in = new String[20000];
+        for(int i = 0; i < in.length; i++) {
+            in[i] = (i % 97 == 0) ? null : "item" + i + "-rev" + (i % 13);
+        }
+
+        final String[] out = MiscUtils.normalizeAllToNaturalSortOrder(in, new String[in.length]);
+        for(int i = 0; i < in.length; i++) {
+            assertThat(out[i]).isEqualTo(MiscUtils.normalizeToNaturalSortOrder(in[i]));
+        }
+
+        assertEquals(Arrays.asList(out), MiscUtils.normalizeAllToNaturalSortOrder(Arrays.asList(in)));
+        assertEquals(Arrays.asList(out), MiscUtils.normalizeAllToNaturalSortOrder(Arrays.stream(in).parallel()).collect(Collectors.toList()));
+    }
+
+    @Test
+	public void testUUIDStrategies() throws Exception {
+        final MiscUtils.UUIDStrategy original = MiscUtils.getUUIDStrategy();
+        final Set<UUID> seen = new HashSet<>();
+        try {
+            for(final MiscUtils.UUIDStrategy strategy : MiscUtils.UUIDStrategy.values()) {
+                MiscUtils.setUUIDStrategy(strategy);
+                final int version = (strategy == MiscUtils.UUIDStrategy.TIME_ORDERED) ? 7 : 1;
+
+                // Several threads at once, single and batched, and no duplicates anywhere.
+                final List<UUID> generated = Collections.synchronizedList(new ArrayList<>());
+                final Thread[] threads = new Thread[4];
+                for(int t = 0; t < threads.length; t++) {
+                    threads[t] = new Thread(() -> {
+                            for(int i = 0; i < 2000; i++) { generated.add(MiscUtils.generateUUIDObject()); }
+                            generated.addAll(Arrays.asList(MiscUtils.generateUUIDObjects(5000)));
+                    });
+                    threads[t].start();
+                }
+                for(final Thread thread : threads) { thread.join(); }
+
+                assertEquals(threads.length * 7000, generated.size());
+                for(final UUID uuid : generated) {
+                    assertEquals(version, uuid.version());
+                    assertEquals(2, uuid.variant());
+                    assertThat(seen.add(uuid)).as("duplicate %s", uuid).isTrue();
+                }
+                assertThat(MiscUtils.generateUUIDs(3)).hasSize(3).doesNotHaveDuplicates();
+                if (version == 1) {
+                    assertEquals(MiscUtils.getUUIDNode().toLong(), generated.get(0).node());
+                }
+            }
+
+            // Any JUG generator of the JVM shares the time based one's timer; the stripes never take its clock sequence.
+            final int shared = Generators.timeBasedGenerator(MiscUtils.getUUIDNode()).generate().clockSequence();
+            MiscUtils.setUUIDStrategy(MiscUtils.UUIDStrategy.TIME_BASED);
+            assertEquals(shared, MiscUtils.generateUUIDObject().clockSequence());
+            MiscUtils.setUUIDStrategy(MiscUtils.UUIDStrategy.STRIPED_TIME_BASED);
+            for(final UUID uuid : MiscUtils.generateUUIDObjects(1000)) {
+                assertThat(uuid.clockSequence()).isNotEqualTo(shared);
+            }
+
+            // Time ordered UUIDs generated in sequence sort in sequence.
+            MiscUtils.setUUIDStrategy(MiscUtils.UUIDStrategy.TIME_ORDERED);
+            final List<String> ordered = new ArrayList<>();
+            for(int i = 0; i < 10000; i++) { ordered.add(MiscUtils.generateUUID()); }
+            assertThat(ordered).isSorted();
+        } finally {
+            MiscUtils.setUUIDStrategy(original);
+        }
+    }
+
+    @Test
+	public void testUUIDCodecs() throws Exception {
+        final Random random = new Random(2016);
+        final char[] chars = new char[40];
+        final byte[] bytes = new byte[40];
+        for(int i = 0; i < 5000; i++) {
+            final UUID uuid = (i == 0) ? new UUID(0, 0) : (i == 1) ? new UUID(-1, -1) : new UUID(random.nextLong(), random.nextLong());
+            final String canonical = uuid.toString();
+
+            assertEquals(canonical, MiscUtils.appendUUID(new StringBuilder(), uuid).toString());
+            assertEquals(40, MiscUtils.writeUUID(uuid, chars, 4));
+            assertEquals(canonical, new String(chars, 4, 36));
+            assertEquals(38, MiscUtils.writeUUID(uuid, bytes, 2));
+            assertEquals(canonical, new String(bytes, 2, 36, "US-ASCII"));
+
+            assertEquals(uuid, MiscUtils.parseUUID(canonical));
+            assertEquals(uuid, MiscUtils.parseUUID(canonical.toUpperCase()));
+            assertEquals(uuid, MiscUtils.parseUUID(bytes, 2));
+            assertEquals(uuid, MiscUtils.generateUUIDObject(canonical));
+
+            final ByteBuffer raw = ByteBuffer.allocate(16).putLong(uuid.getMostSignificantBits()).putLong(uuid.getLeastSignificantBits());
+            final String compact = MiscUtils.toCompactUUID(uuid);
+            assertEquals(Base64.getUrlEncoder().withoutPadding().encodeToString(raw.array()), compact);
+            assertEquals(compact, MiscUtils.appendCompactUUID(new StringBuilder(), uuid).toString());
+            assertEquals(uuid, MiscUtils.parseCompactUUID(compact));
+        }
+
+        // Lenient forms still go through UUID.fromString.
+        assertEquals(new UUID(0x0000000100020003L, 0x0004000000000005L), MiscUtils.generateUUIDObject("1-2-3-4-5"));
+        assertEquals(new UUID(0x0000000100020003L, 0x0004000000000005L), MiscUtils.generateUUIDObject("0000001-00002-0003-0004-000000000005"));
+
+        for(final String malformed : Arrays.asList("", "123e4567-e89b-12d3-a456-42661417400g", "123e4567+e89b-12d3-a456-426614174000",
+                                                   "123e4567-e89b-12d3-a456-4266141740001")) {
+            try {
+                MiscUtils.parseUUID(malformed);
+                Assert.fail("Expected failure parsing " + malformed);
+            } catch(final IllegalArgumentException e) {
+                // expected
+            }
+        }
+        for(final String malformed : Arrays.asList("", "AAAAAAAAAAAAAAAAAAAAAB", "AAAAAAAAAAAAAAAAAAAA+A", "AAAAAAAAAAAAAAAAAAAAA")) {
+            try {
+                MiscUtils.parseCompactUUID(malformed);
+                Assert.fail("Expected failure parsing " + malformed);
+            } catch(final IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+	@Test
+	public void testExtend() throws Exception {
+		val target = new MyOtherBean();
+		target.setProp1("original");
+		target.setCount(1);
+
+		val patch = new MyPatch();
+		patch.setCount("42");   // Converted by BeanUtils.
+		patch.setActive(true);  // Unboxed straight into the setter.
+		
+		val bean = new MyBean();
+		bean.setProp1("patched");
+
+		assertThat(MiscUtils.extend(target, patch, null, bean)).isSameAs(target);
+		assertEquals("patched", target.getProp1());
+		assertEquals(42, target.getCount());
+		assertThat(target.isActive()).isTrue();
+
+		// Boolean "is" getters are properties too.
+		assertThat(MiscUtils.getNonNullProperties(target)).containsOnlyKeys("prop1", "count", "active");
+		assertThat(MiscUtils.getNullProperties(new MyPatch())).containsOnly("prop1", "count", "active");
+	}
+
+    @Test
+	public void testLazyCartesianProduct() throws Exception {
+        final CartesianProduct<Object> product = MiscUtils.lazyCartesianProduct(Arrays.asList(1, 2), Arrays.asList("a", "b", "c"), Arrays.asList(1));
+        assertEquals(6, product.size());
+        assertThat(product).containsExactlyElementsOf(Arrays.asList(Arrays.asList(1, "a", 1), Arrays.asList(1, "b", 1), Arrays.asList(1, "c", 1),
+                                                                    Arrays.asList(2, "a", 1), Arrays.asList(2, "b", 1), Arrays.asList(2, "c", 1)));
+        assertEquals(Arrays.asList(2, "b", 1), product.get(4));
+
+        // Equal elements are not merged away.
+        assertEquals(Arrays.asList(Arrays.asList(1, 1)), MiscUtils.lazyCartesianProduct(Arrays.asList(1), Arrays.asList(1)).stream().collect(Collectors.toList()));
+        assertEquals(0, MiscUtils.lazyCartesianProduct(Arrays.asList(1), Collections.emptyList()).stream().count());
+
+        // Parallel streams split by index range and keep the order.
+        final List<Integer> digits = Arrays.asList(0, 1, 2, 3, 4, 5, 6, 7, 8, 9);
+        final CartesianProduct<Integer> big = MiscUtils.lazyCartesianProduct(digits, digits, digits, digits, digits);
+        assertEquals(100000, big.size());
+        final List<Integer> numbers = big.parallelStream()
+            .map(t -> t.stream().reduce(0, (a, b) -> a * 10 + b))
+            .collect(Collectors.toList());
+        assertEquals(100000, numbers.size());
+        for(int i = 0; i < numbers.size(); i++) {
+            assertEquals(i, numbers.get(i).intValue());
+        }
+    }
+
+    @Test
+	public void testCartesianProductEvaluation() throws Exception {
+        final List<Integer> digits = Arrays.asList(0, 1, 2, 3, 4, 5, 6, 7, 8, 9);
+        final CartesianProduct<Integer> product = MiscUtils.lazyCartesianProduct(digits, digits, digits, digits, digits, digits);
+        final Predicate<List<Integer>> sumIs50 = t -> t.stream().mapToInt(Integer::intValue).sum() == 50;
+
+        final List<Integer> first = product.stream().filter(sumIs50).findFirst().get();
+        assertEquals(first, product.findFirst(sumIs50).get());
+        assertEquals(product.stream().filter(sumIs50).limit(25).collect(Collectors.toList()), product.findFirst(sumIs50, 25));
+        assertThat(sumIs50.test(product.findAny(sumIs50).get())).isTrue();
+
+        assertThat(product.findFirst(t -> false).isPresent()).isFalse();
+        assertThat(product.findAny(t -> false).isPresent()).isFalse();
+        assertThat(product.findFirst(t -> false, 3)).isEmpty();
+
+        // Early termination: nothing past the first match is tested.
+        final AtomicLong tested = new AtomicLong();
+        assertEquals(Arrays.asList(0, 0, 0, 0, 0, 0), product.findFirst(t -> tested.incrementAndGet() > 0).get());
+        assertThat(tested.get()).isLessThan(product.size());
+
+        final long count = product.reduce(0L, (n, t) -> sumIs50.test(t) ? n + 1 : n, Long::sum);
+        assertEquals(product.stream().filter(sumIs50).count(), count);
+    }
+
+    @Test
+	public void testParseEnumCaseInsensitive() throws Exception {
+        assertEquals(MyColor.RED, MiscUtils.parseEnumCaseInsensitive(MyColor.class, "red"));
+        assertEquals(MyColor.GREEN, MiscUtils.parseEnumCaseInsensitive(MyColor.class, "Green"));
+        assertEquals(MyColor.Blue, MiscUtils.parseEnumCaseInsensitive(MyColor.class, "BLUE")); // First declared wins.
+        assertThat(MiscUtils.parseEnumCaseInsensitive(MyColor.class, "dark-green")).isNull();
+        assertEquals(MyColor.GREEN, MiscUtils.parseEnumCaseInsensitive(MyColor.class, "Dark-Green", true));
+        assertThat(MiscUtils.parseEnumCaseInsensitive(MyColor.class, "purple", true)).isNull();
+        assertThat(MiscUtils.parseEnumCaseInsensitive(MyColor.class, null)).isNull();
 
+        for(final ErrorCodes.BJOND_HTTP_ERROR_CODES code : ErrorCodes.BJOND_HTTP_ERROR_CODES.values()) {
+            assertEquals(code, ErrorCodes.BJOND_HTTP_ERROR_CODES.parse(code.name().toLowerCase()));
+        }
+        assertThat(ErrorCodes.BJOND_HTTP_ERROR_CODES.parse("NO_SUCH_CODE")).isNull();
+    }
+
+    @Test
+	public void testRound() throws Exception {
+        assertEquals(2.67, MiscUtils.round(2.675, 2), 0);    // Really 2.67499999...
+        assertEquals(1.0, MiscUtils.round(1.005, 2), 0);     // Really 1.00499999...
+        assertEquals(3.0, MiscUtils.round(2.5, 0), 0);       // Exact tie, away from zero.
+        assertEquals(-3.0, MiscUtils.round(-2.5, 0), 0);
+        assertEquals(0.13, MiscUtils.round(0.125, 2), 0);
+        assertEquals(Double.doubleToLongBits(0.0), Double.doubleToLongBits(MiscUtils.round(-0.001, 2)));
+
+        // Sweep against BigDecimal across magnitudes, places and near ties.
+        final Random random = new Random(42);
+        final double[] values = new double[200_000];
+        for(int i = 0; i < values.length; i++) {
+            final int places = i % 10;
+            switch(i % 4) {
+            case 0:  values[i] = random.nextDouble(); break;
+            case 1:  values[i] = (random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(16)); break;
+            case 2:  values[i] = (random.nextInt(2_000_000) - 1_000_000 + 0.5) / Math.pow(10, places); break; // Decimal ties.
+            default: values[i] = Double.longBitsToDouble(random.nextLong()); break; // Any double at all.
+            }
+            if (Double.isNaN(values[i]) || Double.isInfinite(values[i])) { values[i] = 0; }
+
+            final double expected = new BigDecimal(values[i]).setScale(places, RoundingMode.HALF_UP).doubleValue();
+            assertEquals("round(" + values[i] + ", " + places + ")",
+                         Double.doubleToLongBits(expected), Double.doubleToLongBits(MiscUtils.round(values[i], places)));
+        }
+
+        final double[] out = new double[values.length];
+        MiscUtils.round(values, out, 3);
+        for(int i = 0; i < values.length; i++) {
+            assertEquals(Double.doubleToLongBits(MiscUtils.round(values[i], 3)), Double.doubleToLongBits(out[i]));
+        }
+    }
+
+    @Test
+	public void testEscaper() throws Exception {
+        final String plain = "Nothing to escape here";
+        assertThat(MiscUtils.escapeSingleAndDoubleQuotes(plain)).isSameAs(plain);
+        assertThat(Escaper.JSON.escape(plain)).isSameAs(plain);
+        assertEquals("say \\\"it\\'s\\\"", MiscUtils.escapeSingleAndDoubleQuotes("say \"it's\""));
+        try {
+            MiscUtils.escapeSingleAndDoubleQuotes(null);
+            Assert.fail("Expected a NullPointerException");
+        } catch(final NullPointerException e) {
+            // Expected, as before Escaper.
+        }
+        assertEquals("\"a\\\\b\\'c\\n\"", Escaper.CYPHER.quote("a\\b'c\n"));
+        assertEquals("\"tab\\t bell\\u0007 quote\\\" slash\\\\ '\"", Escaper.JSON.quote("tab\t bell\u0007 quote\" slash\\ '"));
+        assertThat(Escaper.DROOLS.escape(null)).isNull();
+
+        // Same result through every entry point, custom tables included.
+        final Escaper custom = Escaper.of('\'').with('\'', "''");
+        assertEquals("O''Brien", custom.escape("O'Brien"));
+        assertEquals("x'O''Brien'", custom.quote("O'Brien", new StringBuilder("x")).toString());
+        assertEquals("'O''Brien'", custom.quote("O'Brien", (Appendable)new java.io.StringWriter()).toString());
+        assertThat(custom.needsEscaping("OBrien")).isFalse();
+
+        final Random random = new Random(42);
+        final char[] alphabet = "ab\"'\\\n\t\u0001\u00e9".toCharArray();
+        for(int n = 0; n < 1000; n++) {
+            final StringBuilder in = new StringBuilder();
+            for(int i = random.nextInt(20); i > 0; i--) { in.append(alphabet[random.nextInt(alphabet.length)]); }
+            final String s = in.toString();
+            assertEquals(s.replace("\"", "\\\"").replace("'", "\\'"), MiscUtils.escapeSingleAndDoubleQuotes(s));
+            assertEquals(Escaper.JSON.escape(s), Escaper.JSON.escape(s, new StringBuilder()).toString());
+            assertEquals(Escaper.JSON.escape(s), Escaper.JSON.escape(s, (Appendable)new StringBuilder()).toString());
+        }
+    }
+
+    @Test
+	public void testDigests() throws Exception {
+        final byte[] small = "The quick brown fox jumps over the lazy dog".getBytes(StandardCharsets.UTF_8);
+        assertEquals("9e107d9d372bb6826bd81d3542a419d6", Digests.hex(Digests.hash(Digests.Algorithm.MD5, small)));
+        assertEquals("2fd4e1c67a2d28fced849ee1bb76e7391b93eb12", Digests.hex(Digests.hash(Digests.Algorithm.SHA1, small)));
+        assertEquals("d7a8fbb307d7809469ca9abcb0082e4f8d5651e46d3cdb762d02d0bf37c9e592",
+                     Digests.hex(Digests.hash(Digests.Algorithm.SHA256, small)));
+        assertEquals("nhB9nTcrtoJr2B01QqQZ1g==", Digests.base64(Digests.hash(Digests.Algorithm.MD5, small)));
+        assertEquals("x:9e107d9d372bb6826bd81d3542a419d6",
+                     Digests.appendHex(MiscUtils.getMD5().digest(small), new StringBuilder("x:")).toString());
+
+        // Every route agrees with a plain MessageDigest, below and above the mapping threshold.
+        final Random random = new Random(42);
+        for(final int size : new int[] {0, 1000, 200_000, 3 * 1024 * 1024 + 7}) {
+            final byte[] data = new byte[size];
+            random.nextBytes(data);
+            final File file = File.createTempFile("digests", ".bin");
+            file.deleteOnExit();
+            java.nio.file.Files.write(file.toPath(), data);
+
+            for(final Digests.Algorithm algorithm : Digests.Algorithm.values()) {
+                final byte[] expected = MessageDigest.getInstance(algorithm.getName()).digest(data);
+                Assert.assertArrayEquals(expected, Digests.hash(algorithm, data));
+                Assert.assertArrayEquals(expected, Digests.hash(algorithm, ByteBuffer.wrap(data)));
+                final ByteBuffer direct = ByteBuffer.allocateDirect(size);
+                direct.put(data).flip();
+                Assert.assertArrayEquals(expected, Digests.hash(algorithm, direct));
+                Assert.assertArrayEquals(expected, Digests.hash(algorithm, new ByteArrayInputStream(data)));
+                Assert.assertArrayEquals(expected, Digests.hash(algorithm, file.toPath()));
+                try(final FileInputStream in = new FileInputStream(file)) {
+                    Assert.assertArrayEquals(expected, Digests.hash(algorithm, in));
+                }
+            }
+            file.delete();
+        }
+    }
+
+    @Test
+	public void testResourceLoader() throws Exception {
+        // From a jar.
+        final ByteBuffer bytes = ResourceLoader.readBytes(Test.class, "Test.class");
+        assertEquals(0xCAFEBABE, bytes.getInt());
+        assertThat(bytes.isReadOnly()).isTrue();
+        assertEquals(0, ResourceLoader.readBytes(Test.class, "Test.class").position());
+
+        try {
+            MiscUtils.readContentsFromResource(TestUtils.class, "no-such-resource.txt");
+            Assert.fail("Expected an IOException");
+        } catch(final java.io.FileNotFoundException e) {
+            assertThat(e.getMessage()).contains("no-such-resource.txt");
+        }
+
+        // From the file system, cached, and reloaded once changed.
+        final File file = new File(new File(TestUtils.class.getResource("TestUtils.class").toURI()).getParentFile(), "resource-loader-test.txt");
+        file.deleteOnExit();
+        final boolean check = ResourceLoader.isCheckModified();
+        try {
+            java.nio.file.Files.write(file.toPath(), "héllo".getBytes(StandardCharsets.UTF_8));
+            ResourceLoader.setCheckModified(false);
+            final String first = MiscUtils.readContentsFromResource(TestUtils.class, "resource-loader-test.txt");
+            assertEquals("héllo", first);
+            assertThat(MiscUtils.readContentsFromResource(TestUtils.class, "resource-loader-test.txt")).isSameAs(first);
+
+            java.nio.file.Files.write(file.toPath(), "héllo again".getBytes(StandardCharsets.UTF_8));
+            assertThat(MiscUtils.readContentsFromResource(TestUtils.class, "resource-loader-test.txt")).isSameAs(first);
+            ResourceLoader.setCheckModified(true);
+            assertEquals("héllo again", MiscUtils.readContentsFromResource(TestUtils.class, "resource-loader-test.txt"));
+        } finally {
+            ResourceLoader.setCheckModified(check);
+            ResourceLoader.invalidateAll();
+            file.delete();
+        }
+    }
+
+    @Test
+	public void testServiceLocator() throws Exception {
+        final InMemoryContext context = new InMemoryContext();
+        final AtomicLong contexts = new AtomicLong();
+        final ServiceLocator locator = new ServiceLocator(() -> { contexts.incrementAndGet(); return context; });
+        final ServiceLocator previous = ServiceLocator.getDefault();
+        ServiceLocator.setDefault(locator);
+        try {
+            final MyBean bean = new MyBean();
+            context.bind("java:global/test/MyBean", bean);
+
+            assertThat(MiscUtils.obtainService("java:global/test/MyBean", MyBean.class)).isSameAs(bean);
+            context.unbind("java:global/test/MyBean");
+            assertThat(MiscUtils.obtainService("java:global/test/MyBean", MyBean.class)).isSameAs(bean); // Cached.
+            assertEquals(1, locator.getHits());
+            assertEquals(1, locator.getMetrics().get("java:global/test/MyBean").getLookups());
+
+            locator.invalidate("java:global/test/MyBean");
+            assertThat(MiscUtils.obtainService("java:global/test/MyBean", MyBean.class)).isNull();
+            assertThat(MiscUtils.obtainService("java:global/test/MyBean", String.class)).isNull();
+            assertThat(MiscUtils.obtainService(null, MyBean.class)).isNull();
+            assertEquals(2, locator.getMetrics().get("java:global/test/MyBean").getFailures());
+            assertEquals(2, contexts.get()); // The failure reset the context.
+
+            // Without a type the result is cast unchecked, as obtainService always did.
+            context.bind("java:global/test/MyBean", bean);
+            final MyBean untyped = MiscUtils.obtainService("java:global/test/MyBean", null);
+            assertThat(untyped).isSameAs(bean);
+            context.unbind("java:global/test/MyBean");
+
+            // Relative names resolve per component: never cached.
+            context.bind("java:comp/env/Stateful", bean);
+            assertThat(locator.lookup("java:comp/env/Stateful", MyBean.class)).isSameAs(bean);
+            context.unbind("java:comp/env/Stateful");
+            assertThat(locator.find("java:comp/env/Stateful", MyBean.class)).isNull();
+
+            context.bind("java:global/test/Other", "other");
+            final Map<String, NamingException> failures = locator.prewarm(Arrays.asList("java:global/test/Other", "java:global/test/Missing"));
+            assertEquals(Collections.singleton("java:global/test/Missing"), failures.keySet());
+            assertEquals("other", locator.lookup("java:global/test/Other", String.class));
+            try {
+                locator.lookup("java:global/test/Other", MyBean.class);
+                Assert.fail("Expected a ClassCastException");
+            } catch(final ClassCastException e) {
+                // Expected.
+            }
+
+            // A JNDI call in progress holds up no other: Slow waits for Fast to be looked up.
+            final CountDownLatch slowStarted = new CountDownLatch(1);
+            final CountDownLatch fastDone = new CountDownLatch(1);
+            final AtomicBoolean overlapped = new AtomicBoolean();
+            final Context slow = (Context)Proxy.newProxyInstance(Context.class.getClassLoader(), new Class<?>[] {Context.class}, (proxy, method, args) -> {
+                if (method.getName().equals("lookup") && "java:comp/env/Slow".equals(args[0])) {
+                    slowStarted.countDown();
+                    overlapped.set(fastDone.await(5, TimeUnit.SECONDS));
+                }
+                try {
+                    return method.invoke(context, args);
+                } catch(final InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            });
+            final ServiceLocator concurrent = new ServiceLocator(() -> slow);
+            context.bind("java:comp/env/Slow", "slow");
+            context.bind("java:comp/env/Fast", "fast");
+            final Thread thread = new Thread(() -> concurrent.find("java:comp/env/Slow", String.class));
+            thread.start();
+            Assert.assertTrue(slowStarted.await(5, TimeUnit.SECONDS));
+            assertEquals("fast", concurrent.lookup("java:comp/env/Fast", String.class));
+            fastDone.countDown();
+            thread.join();
+            Assert.assertTrue(overlapped.get());
+        } finally {
+            ServiceLocator.setDefault(previous);
+        }
+    }
+
+    @Test
+	public void testRuntimeEnvironment() throws Exception {
+        final Properties arquillian = new Properties();
+        arquillian.setProperty("ARQUILLIAN", "true");
+        final Map<String, String> env = new HashMap<>();
+        env.put("BJOND_RUNTIME_MODE", "Production");
+        env.put("OPENSHIFT_APP_NAME", "bjond");
+        env.put("OPENSHIFT_APP_DNS", "bjond.example.com");
+
+        final RuntimeEnvironment openshift = RuntimeEnvironment.of(env, arquillian);
+        assertThat(openshift.isProductionMode()).isTrue();
+        assertEquals("bjond", openshift.getOpenshiftAppName());
+        assertThat(openshift.isRunningUnderArquillian()).isTrue();
+        assertEquals("http://bjond.example.com", openshift.getHostString());
+        env.put("OPENSHIFT_PUBLIC_URL", "https://test.bjond.com");
+        assertEquals("https://test.bjond.com", RuntimeEnvironment.of(env, arquillian).getHostString());
+
+        final RuntimeEnvironment local = RuntimeEnvironment.of(Collections.emptyMap(), new Properties(),
+                                                               () -> InetAddress.getLoopbackAddress());
+        assertThat(local.isProductionMode()).isFalse();
+        assertThat(local.isRunningUnderArquillian()).isFalse();
+        assertEquals("http://127.0.0.1:8080", local.getHostString());
+
+        // A lookup that hangs costs one timeout, then the default without waiting.
+        final CountDownLatch release = new CountDownLatch(1);
+        final RuntimeEnvironment hung = RuntimeEnvironment.of(Collections.emptyMap(), new Properties(), () -> {
+                try { release.await(); } catch(final InterruptedException e) { Thread.currentThread().interrupt(); }
+                return InetAddress.getLoopbackAddress();
+            });
+        assertEquals("http://localhost:8080", hung.getHostString());
+        final long start = System.nanoTime();
+        assertEquals("http://localhost:8080", hung.getHostString());
+        assertThat(System.nanoTime() - start).isLessThan(TimeUnit.MILLISECONDS.toNanos(RuntimeEnvironment.HOST_RESOLUTION_TIMEOUT_MILLIS));
+        release.countDown();
+
+        // Memoized until refreshed.
+        final boolean before = MiscUtils.isRunningUnderArquillian();
+        System.setProperty("ARQUILLIAN", "true");
+        try {
+            assertEquals(before, MiscUtils.isRunningUnderArquillian());
+            RuntimeEnvironment.refresh();
+            assertThat(MiscUtils.isRunningUnderArquillian()).isTrue();
+        } finally {
+            System.clearProperty("ARQUILLIAN");
+            RuntimeEnvironment.refresh();
+        }
+    }
+
+    @Test
+	public void testJSONBytes() throws Exception {
+        final MyOtherBean bean = new MyOtherBean();
+        bean.setProp1("naïve “quotes” 😀");
+        bean.setCount(7);
+        // The UTF-8 generator escapes the emoji, the String one doesn't. Same JSON all the same.
+        assertEquals(JSONUtils.toMap(JSONUtils.toJSON(bean)), JSONUtils.toMap(new String(JSONUtils.toJSONBytes(bean), StandardCharsets.UTF_8)));
+
+        bean.setProp1("naïve “quotes”");
+        final byte[] expected = JSONUtils.toJSON(bean).getBytes(StandardCharsets.UTF_8);
+        Assert.assertArrayEquals(expected, JSONUtils.toJSONBytes(bean));
+
+        final AtomicLong closed = new AtomicLong();
+        final ByteArrayOutputStream out = new ByteArrayOutputStream() {
+                @Override public void close() { closed.incrementAndGet(); }
+            };
+        JSONUtils.writeJSON(bean, out);
+        Assert.assertArrayEquals(expected, out.toByteArray());
+        assertEquals(0, closed.get());
+
+        for(final ByteBuffer buffer : new ByteBuffer[] {ByteBuffer.allocate(256), ByteBuffer.allocateDirect(256)}) {
+            buffer.put((byte)'x');
+            assertEquals(expected.length, JSONUtils.writeJSON(bean, buffer));
+            assertEquals(1 + expected.length, buffer.position());
+            final byte[] written = new byte[expected.length];
+            buffer.flip();
+            buffer.position(1);
+            buffer.get(written);
+            Assert.assertArrayEquals(expected, written);
+        }
+
+        final ByteBuffer small = ByteBuffer.allocate(expected.length - 1);
+        try {
+            JSONUtils.writeJSON(bean, small);
+            Assert.fail("Expected a BufferOverflowException");
+        } catch(final BufferOverflowException e) {
+            assertEquals(0, small.position());
+        }
+    }
+
+    @Test
+	public void testJSONMaps() throws Exception {
+        final Map<String, Object> map = JSONUtils.toMap("{\"a\":1,\"b\":[true,null],\"c\":{\"d\":\"e\"}}");
+        assertEquals(1, map.get("a"));
+        assertEquals(Arrays.asList(true, null), map.get("b"));
+        assertEquals(Collections.singletonMap("d", "e"), map.get("c"));
+        assertEquals(map, JSONUtils.toObjectMap("{\"a\":1,\"b\":[true,null],\"c\":{\"d\":\"e\"}}"));
+        assertEquals("{\n  \"x\" : \"y\"\n}", JSONUtils.prettyPrint("{\"x\":\"y\"}").replace("\r\n", "\n"));
+
+        // Still as strict as the default ObjectMapper they used to be read by.
+        try {
+            JSONUtils.toMap("{\"a\":\"tab\there\"}");
+            Assert.fail("Expected an unescaped control character to be rejected");
+        } catch(final IOException e) {
+            // Expected.
+        }
+    }
+
+    @Test
+	public void testReformat() throws Exception {
+        final String json = "{\"zeta\":1,\"alpha\":null,\"n\":1.10,\"big\":12345678901234567890.5,\"o\":{\"q\":[1,{}],\"s\":\"é\\\"\\n\"}}";
+        final String pretty = "{\n"
+            + "  \"zeta\" : 1,\n"
+            + "  \"alpha\" : null,\n"
+            + "  \"n\" : 1.10,\n"
+            + "  \"big\" : 12345678901234567890.5,\n"
+            + "  \"o\" : {\n"
+            + "    \"q\" : [ 1, { } ],\n"
+            + "    \"s\" : \"é\\\"\\n\"\n"
+            + "  }\n"
+            + "}";
+        assertEquals(pretty, JSONUtils.prettyPrint(json).replace("\r\n", "\n"));
+        assertEquals(json, JSONUtils.minify(pretty));
+        assertEquals("[1,2,[]]", JSONUtils.minify(" [ 1 ,\n 2, [ ] ] "));
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        JSONUtils.prettyPrint(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)), out);
+        assertEquals(pretty, new String(out.toByteArray(), StandardCharsets.UTF_8).replace("\r\n", "\n"));
+        out.reset();
+        JSONUtils.minify(new ByteArrayInputStream(pretty.getBytes(StandardCharsets.UTF_8)), out);
+        assertEquals(json, new String(out.toByteArray(), StandardCharsets.UTF_8));
+
+        try {
+            JSONUtils.minify("{\"a\":\"tab\there\"}");
+            Assert.fail("Expected an unescaped control character to be rejected");
+        } catch(final IOException e) {
+            // Expected.
+        }
+    }
+
+    @Test
+	public void testClone() throws Exception {
+        final MyNode root = new MyNode();
+        root.setName("root");
+        root.setWeight(3);
+        root.setCreated(new Date(1_000_000L));
+        root.setColor(MyColor.GREEN);
+        root.setScores(new int[] {1, 2, 3});
+        root.getAttributes().put("tags", new ArrayList<>(Arrays.asList("a", "b")));
+        root.getAttributes().put("amount", new BigDecimal("10.50"));
+        for(int i = 0; i < 3; i++) {
+            final MyNode child = new MyNode();
+            child.setName("child" + i);
+            child.setParent(root);
+            root.getChildren().add(child);
+        }
+
+        // TokenBuffer clone: same as the JSON text round trip, untyped 10.50 becoming a Double
+        // included, and parent is @JsonIgnore'd.
+        final MyNode cloned = JSONUtils.clone(root, MyNode.class);
+        assertEquals(JSONUtils.toJSON(JSONUtils.fromJSON(JSONUtils.toJSON(root), MyNode.class)), JSONUtils.toJSON(cloned));
+        assertThat(cloned.getChildren().get(0).getParent()).isNull();
+
+        // Untyped numbers come back as parsed from the text, whatever they were.
+        root.getAttributes().put("count", 1L);
+        root.getAttributes().put("big", 1L << 40);
+        root.getAttributes().put("small", (short)7);
+        root.getAttributes().put("huge", BigInteger.valueOf(3));
+        root.getAttributes().put("ratio", 0.1f);
+        root.getAttributes().put("bytes", new byte[] {1, 2, 3});
+        root.getAttributes().put("raw", new RawValue("{\"x\":1}"));
+        final Map<String, Object> parsed = JSONUtils.fromJSON(JSONUtils.toJSON(root), MyNode.class).getAttributes();
+        final Map<String, Object> attributes = JSONUtils.clone(root, MyNode.class).getAttributes();
+        for(final String key : Arrays.asList("count", "big", "small", "huge", "ratio", "bytes", "raw")) {
+            assertEquals(key, parsed.get(key), attributes.get(key));
+        }
+        assertThat(attributes.get("count")).isInstanceOf(Integer.class);
+        assertThat(attributes.get("big")).isInstanceOf(Long.class);
+        assertThat(attributes.get("bytes")).isEqualTo("AQID");
+        assertThat(attributes.get("raw")).isInstanceOf(Map.class);
+        root.getAttributes().keySet().removeAll(Arrays.asList("count", "big", "small", "huge", "ratio", "bytes", "raw"));
+
+        // Field by field deep copy: everything, cycles included, nothing shared that is mutable.
+        final MyNode copy = JSONUtils.deepCopy(root);
+        assertThat(copy).isNotSameAs(root);
+        assertEquals(JSONUtils.toJSON(root), JSONUtils.toJSON(copy));
+        assertThat(copy.getCreated()).isEqualTo(root.getCreated()).isNotSameAs(root.getCreated());
+        assertThat(copy.getScores()).isEqualTo(root.getScores()).isNotSameAs(root.getScores());
+        assertThat(copy.getAttributes().get("tags")).isEqualTo(root.getAttributes().get("tags")).isNotSameAs(root.getAttributes().get("tags"));
+        assertThat(copy.getAttributes().get("amount")).isSameAs(root.getAttributes().get("amount"));
+        for(final MyNode child : copy.getChildren()) {
+            assertThat(child.getParent()).isSameAs(copy);
+        }
+        assertThat(copy.getChildren().get(0)).isNotSameAs(root.getChildren().get(0));
+
+        // Collections and maps fit their fields: copied as their own class, or through Jackson as the field's type.
+        final MyConcurrentBean concurrent = new MyConcurrentBean();
+        concurrent.getCounts().put("a", 1);
+        concurrent.getListeners().add("l");
+        concurrent.getSettings().setProperty("k", "v");
+        concurrent.getCache().put("c", 3);
+        final MyConcurrentBean concurrentCopy = JSONUtils.deepCopy(concurrent);
+        assertThat(concurrentCopy.getCounts()).isInstanceOf(ConcurrentHashMap.class).isEqualTo(concurrent.getCounts()).isNotSameAs(concurrent.getCounts());
+        assertThat(concurrentCopy.getListeners()).isInstanceOf(CopyOnWriteArrayList.class).containsExactly("l").isNotSameAs(concurrent.getListeners());
+        assertEquals("v", concurrentCopy.getSettings().getProperty("k"));
+        assertThat(concurrentCopy.getTags()).isInstanceOf(ImmutableList.class).containsExactly("a", "b");
+        assertThat(concurrentCopy.getCache()).isInstanceOf(ConcurrentMap.class).isEqualTo(concurrent.getCache()).isNotSameAs(concurrent.getCache());
+
+        // Not a plain bean: immutable or final fields go through Jackson.
+        final List<MyBean> beans = JSONUtils.deepCopy(Collections.singletonList(new MyBean()));
+        assertEquals(1, beans.size());
+        assertThat(JSONUtils.deepCopy((Object)null)).isNull();
+    }
+
+    @Test
+	public void testBjondPropertyFilter() throws Exception {
+        final MyFilteredBean bean = new MyFilteredBean();
+        bean.getCounts().put("zeta", 1);
+        bean.getCounts().put("alpha", 2);
+
+        assertEquals("{\"name\":\"Ward 7\"}", BjondPropertyFilter.toJSON(bean, FilterAction.INCLUDE, "summary"));
+        assertEquals("{\"name\":\"Ward 7\",\"notes\":\"Quiet\"}", BjondPropertyFilter.toJSON(bean, FilterAction.INCLUDE, "detail", "summary"));
+        assertEquals("{\"id\":\"1\",\"counts\":{\"alpha\":2,\"zeta\":1}}", BjondPropertyFilter.toJSON(bean, FilterAction.EXCLUDE, "detail"));
+        assertEquals("{\"id\":\"1\"}", BjondPropertyFilter.toJSON(bean, FilterAction.EXCLUDE, "detail", "audit"));
+        assertThat(BjondPropertyFilter.toJSON(bean, true, FilterAction.INCLUDE, "summary")).contains("\"name\" : \"Ward 7\"");
+
+        // Cached per action and flag set; order and duplicates don't matter.
+        assertThat(BjondPropertyFilter.writer(false, FilterAction.INCLUDE, "summary", "detail"))
+            .isSameAs(BjondPropertyFilter.writer(false, FilterAction.INCLUDE, "detail", "summary", "detail"));
+        assertThat(BjondPropertyFilter.writer(false, FilterAction.INCLUDE, "summary"))
+            .isNotSameAs(BjondPropertyFilter.writer(true, FilterAction.INCLUDE, "summary"));
+
+        final AtomicLong closed = new AtomicLong();
+        final ByteArrayOutputStream out = new ByteArrayOutputStream() {
+                @Override public void close() { closed.incrementAndGet(); }
+            };
+        BjondPropertyFilter.toJSON(bean, out, FilterAction.EXCLUDE, "detail");
+        assertEquals(BjondPropertyFilter.toJSON(bean, FilterAction.EXCLUDE, "detail"), new String(out.toByteArray(), StandardCharsets.UTF_8));
+        assertEquals(0, closed.get());
+
+        // Other mappers filter the same, their property masks precomputed by module() or not.
+        for(final ObjectMapper mapper : Arrays.asList(new ObjectMapper().registerModule(BjondPropertyFilter.module()), new ObjectMapper())) {
+            final SimpleFilterProvider filters = new SimpleFilterProvider().addFilter(BjondPropertyFilter.NAME, new BjondPropertyFilter(FilterAction.EXCLUDE, "detail"));
+            assertEquals("{\"id\":\"1\",\"counts\":{\"zeta\":1,\"alpha\":2}}", mapper.writer(filters).writeValueAsString(bean));
+        }
+
+        // Past 64 distinct flags the masks take more than one word.
+        final String[] many = new String[100];
+        for(int i = 0; i < many.length; i++) { many[i] = "flag" + i; }
+        many[99] = "audit";
+        assertEquals("{\"counts\":{\"alpha\":2,\"zeta\":1}}", BjondPropertyFilter.toJSON(bean, FilterAction.INCLUDE, many));
+        assertEquals("{\"id\":\"1\",\"name\":\"Ward 7\",\"notes\":\"Quiet\"}", BjondPropertyFilter.toJSON(bean, FilterAction.EXCLUDE, many));
+
+        // Flags no annotation declares match nothing; a filter made before its flag's annotation is met still matches it.
+        assertEquals("{}", BjondPropertyFilter.toJSON(bean, FilterAction.INCLUDE, "unknown-1", "unknown-2"));
+        final ObjectWriter late = BjondPropertyFilter.writer(false, FilterAction.INCLUDE, "late", "unknown-3");
+        assertEquals("{}", late.writeValueAsString(bean));
+        assertEquals("{\"note\":\"Late\"}", late.writeValueAsString(new MyLateBean()));
+
+        // Compiled into the serializers, the output is the same.
+        final MyExtensibleBean extensible = new MyExtensibleBean();
+        extensible.getExtra().put("ward", "7");
+        final List<Object> graph = Arrays.asList(bean, extensible, bean);
+        final String[][] flagSets = {{}, {"summary"}, {"detail"}, {"audit", "summary"}, {"none"}};
+        for(final FilterAction action : FilterAction.values()) {
+            for(final String[] flags : flagSets) {
+                for(final boolean pretty : new boolean[] {false, true}) {
+                    assertEquals(BjondPropertyFilter.writer(pretty, action, flags).writeValueAsString(graph),
+                                 BjondPropertyFilter.compiledWriter(pretty, action, flags).writeValueAsString(graph));
+                }
+            }
+        }
+        assertEquals("{}", BjondPropertyFilter.compiledWriter(false, FilterAction.INCLUDE, "none").writeValueAsString(bean));
+        assertEquals("{\"ward\":\"7\"}", BjondPropertyFilter.compiledWriter(false, FilterAction.INCLUDE, "detail").writeValueAsString(extensible));
+
+        // Streamed as an array, flushed in chunks, the stream closed and out left open.
+        final List<MyFilteredBean> rows = Collections.nCopies(10000, bean);
+        final AtomicLong flushes = new AtomicLong();
+        final AtomicLong streamClosed = new AtomicLong();
+        final ByteArrayOutputStream array = new ByteArrayOutputStream() {
+                @Override public void flush() { flushes.incrementAndGet(); }
+                @Override public void close() { closed.incrementAndGet(); }
+            };
+        assertEquals(10000, BjondPropertyFilter.toJSONArray(rows.stream().onClose(streamClosed::incrementAndGet), array, FilterAction.EXCLUDE, "detail"));
+        assertEquals(BjondPropertyFilter.toJSON(rows, FilterAction.EXCLUDE, "detail"), new String(array.toByteArray(), StandardCharsets.UTF_8));
+        final long chunks = array.size() / BjondPropertyFilter.DEFAULT_FLUSH_BYTES;
+        assertThat(chunks).isGreaterThan(1);
+        assertThat(flushes.get()).isBetween(chunks, chunks + 2);
+        assertEquals(1, streamClosed.get());
+        assertEquals(0, closed.get());
+
+        final ByteArrayOutputStream empty = new ByteArrayOutputStream();
+        BjondPropertyFilter.streamingOutput(Collections.emptyList().stream(), FilterAction.INCLUDE, "summary").write(empty);
+        assertEquals("[]", new String(empty.toByteArray(), StandardCharsets.UTF_8));
+
+        final ByteArrayOutputStream truncated = new ByteArrayOutputStream();
+        final AtomicLong fetched = new AtomicLong();
+        final Iterator<MyFilteredBean> failing = rows.stream().map(b -> {
+                if (fetched.incrementAndGet() == 5000) throw new IllegalStateException("Cursor closed");
+                return b;
+            }).iterator();
+        try {
+            BjondPropertyFilter.toJSONArray(failing, truncated, FilterAction.EXCLUDE, "detail");
+            Assert.fail("The iterator's failure must come through.");
+        } catch(final IllegalStateException e) {
+            assertThat(new String(truncated.toByteArray(), StandardCharsets.UTF_8)).startsWith("[{").doesNotEndWith("]");
+        }
+    }
+
+}